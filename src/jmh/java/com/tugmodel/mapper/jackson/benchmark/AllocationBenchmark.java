@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tugmodel.client.model.Model;
+import com.tugmodel.mapper.jackson.JacksonMapper;
+import com.tugmodel.mapper.jackson.PooledOutputStream;
+
+/**
+ * Garbage per serialization of the String/byte[] results compared to the ByteBuffer and pooled ones. The numbers to
+ * look at are the gc.alloc.rate.norm(bytes per operation) of the GC profiler enabled by the "benchmark" profile:
+ * 
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc AllocationBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    @Param({ "TYPED", "MODEL_MODULE" })
+    public MapperFlavour flavour;
+
+    @Param({ "FLAT", "COLLECTION" })
+    public ModelShape shape;
+
+    private JacksonMapper<Model> mapper;
+    private Model model;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        mapper = flavour.create();
+        model = shape.create();
+        buffer = ByteBuffer.allocateDirect(mapper.serializeAsBytes(model).length * 2);
+    }
+
+    @Benchmark
+    public Object serialize() {
+        return mapper.serialize(model);
+    }
+
+    @Benchmark
+    public byte[] serializeAsBytes() {
+        return mapper.serializeAsBytes(model);
+    }
+
+    @Benchmark
+    public int serializeIntoBuffer() {
+        buffer.clear();
+        return mapper.serialize(model, buffer);
+    }
+
+    @Benchmark
+    public int serializePooled() {
+        try (PooledOutputStream out = mapper.serializePooled(model)) {
+            return out.size();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tugmodel.client.model.Model;
+import com.tugmodel.mapper.jackson.JacksonMapper;
+
+/**
+ * Throughput of the main JacksonMapper operations for every mapper flavour and model shape. Run with the "benchmark"
+ * profile, which also enables the GC profiler for the allocation rate:
+ * 
+ * mvn -Pbenchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param
+    public MapperFlavour flavour;
+
+    @Param
+    public ModelShape shape;
+
+    private JacksonMapper<Model> mapper;
+    private Model model;
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        mapper = flavour.create();
+        model = shape.create();
+        json = mapper.serialize(model).toString();
+        bytes = mapper.serializeAsBytes(model);
+    }
+
+    @Benchmark
+    public Object serialize() {
+        return mapper.serialize(model);
+    }
+
+    @Benchmark
+    public byte[] serializeAsBytes() {
+        return mapper.serializeAsBytes(model);
+    }
+
+    @Benchmark
+    public Model deserialize() {
+        return mapper.deserialize(json);
+    }
+
+    @Benchmark
+    public Model deserializeBytes() {
+        return mapper.deserialize(bytes);
+    }
+
+    @Benchmark
+    public Model updateModel() {
+        Model dest = new Model();
+        mapper.updateModel(model, dest);
+        return dest;
+    }
+
+    @Benchmark
+    public Map<?, ?> convert() {
+        return mapper.convert(model, Map.class);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+import com.tugmodel.mapper.jackson.JacksonFormat;
+import com.tugmodel.mapper.jackson.JacksonMapper;
+import com.tugmodel.mapper.jackson.JacksonMappers;
+import com.tugmodel.mapper.jackson.MixinsGenerator;
+import com.tugmodel.mapper.jackson.ModelModule;
+
+/**
+ * The mapper configurations compared by the benchmarks.
+ */
+public enum MapperFlavour {
+    CONFIG_READER {
+        @Override
+        public JacksonMapper<Model> create() {
+            return JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON);
+        }
+    },
+    TYPED {
+        @Override
+        public JacksonMapper<Model> create() {
+            return JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        }
+    },
+    PRETTY_PRINT {
+        @Override
+        public JacksonMapper<Model> create() {
+            return JacksonMappers.getPrettyPrintMapper();
+        }
+    },
+    /** Config reader settings plus the javassist mixins of all the metas. Needs the metas on the classpath. */
+    META_MIXINS {
+        @Override
+        public JacksonMapper<Model> create() {
+            return wrap(JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON).getMapper().copy()
+                    .registerModule(new MixinsGenerator("BenchmarkMixins")));
+        }
+    },
+    /** Config reader settings plus the dedicated Model serializer/deserializer. */
+    MODEL_MODULE {
+        @Override
+        public JacksonMapper<Model> create() {
+            return wrap(JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON).getMapper().copy()
+                    .registerModule(new ModelModule()));
+        }
+    };
+
+    public abstract JacksonMapper<Model> create();
+
+    static JacksonMapper<Model> wrap(final ObjectMapper objectMapper) {
+        return new JacksonMapper<Model>() {
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+        };
+    }
+}
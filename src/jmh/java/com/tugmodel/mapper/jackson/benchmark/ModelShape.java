@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * The model shapes used by the benchmarks.
+ */
+public enum ModelShape {
+    /** A typical model: id, version and a few scalar attributes. */
+    FLAT {
+        @Override
+        public Model create() {
+            return flat(0);
+        }
+    },
+    /** A chain of child models, 10 levels deep. */
+    NESTED {
+        @Override
+        public Model create() {
+            Model root = flat(0);
+            Model parent = root;
+            for (int i = 1; i <= 10; i++) {
+                Model child = flat(i);
+                parent.set("child", child);
+                parent = child;
+            }
+            return root;
+        }
+    },
+    /** A single model with 1000 attributes. */
+    WIDE {
+        @Override
+        public Model create() {
+            Model model = flat(0);
+            for (int i = 0; i < 1000; i++) {
+                model.set("attribute" + i, i % 2 == 0 ? (Object) ("value" + i) : (Object) i);
+            }
+            return model;
+        }
+    },
+    /** A model holding a list of 1000 child models. */
+    COLLECTION {
+        @Override
+        public Model create() {
+            Model model = flat(0);
+            List<Model> items = new ArrayList<Model>();
+            for (int i = 0; i < 1000; i++) {
+                items.add(flat(i));
+            }
+            model.set("items", items);
+            return model;
+        }
+    };
+
+    public abstract Model create();
+
+    static Model flat(int i) {
+        Model model = new Model();
+        model.set(Model.KEY_ID, "model-" + i);
+        model.set(Model.KEY_VERSION, 1);
+        model.set("name", "Name " + i);
+        model.set("description", "Some longer description of the model number " + i);
+        model.set("tenant", "tenant-" + (i % 10));
+        model.set("count", i);
+        model.set("price", i * 1.5d);
+        model.set("active", i % 2 == 0);
+        model.set("created", 1500000000000L + i);
+        return model;
+    }
+}
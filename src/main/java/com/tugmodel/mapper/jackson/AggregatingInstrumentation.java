@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In process {@link MapperInstrumentation} that aggregates the calls per (mapper, operation, type): counts, latency
+ * histogram with power of 2 buckets, sizes in/out and errors by cause. Meant to be polled periodically by whatever
+ * exports the metrics, see {@link #getStats()} and {@link #reset()}.
+ */
+public class AggregatingInstrumentation implements MapperInstrumentation {
+    private final ConcurrentMap<StatsKey, Stats> stats = new ConcurrentHashMap<StatsKey, Stats>();
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public void onSuccess(String mapper, Operation operation, Class<?> type, long nanos, long sizeIn, long sizeOut) {
+        Stats s = stats(mapper, operation, type);
+        s.latency.record(nanos);
+        if (sizeIn >= 0) {
+            s.sizeIn.add(sizeIn);
+        }
+        if (sizeOut >= 0) {
+            s.sizeOut.add(sizeOut);
+        }
+    }
+
+    public void onError(String mapper, Operation operation, Class<?> type, long nanos, Throwable cause) {
+        Stats s = stats(mapper, operation, type);
+        s.latency.record(nanos);
+        s.errors.computeIfAbsent(cause.getClass().getName(), k -> new LongAdder()).increment();
+    }
+
+    private Stats stats(String mapper, Operation operation, Class<?> type) {
+        StatsKey key = new StatsKey(mapper, operation, type);
+        Stats s = stats.get(key);
+        if (s == null) {
+            s = stats.computeIfAbsent(key, Stats::new);
+        }
+        return s;
+    }
+
+    public Collection<Stats> getStats() {
+        return new ArrayList<Stats>(stats.values());
+    }
+
+    /**
+     * The slowest (mapper, operation, type) combinations by mean latency.
+     */
+    public List<Stats> getSlowest(int limit) {
+        List<Stats> result = new ArrayList<Stats>(stats.values());
+        result.sort((a, b) -> Double.compare(b.getMeanNanos(), a.getMeanNanos()));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stats s : stats.values()) {
+            sb.append(s).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static final class StatsKey {
+        private final String mapper;
+        private final Operation operation;
+        private final Class<?> type;
+
+        StatsKey(String mapper, Operation operation, Class<?> type) {
+            this.mapper = mapper;
+            this.operation = operation;
+            this.type = type;
+        }
+
+        public String getMapper() {
+            return mapper;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * (mapper == null ? 0 : mapper.hashCode()) + operation.hashCode()) * 31
+                    + (type == null ? 0 : type.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StatsKey)) {
+                return false;
+            }
+            StatsKey other = (StatsKey) obj;
+            return operation == other.operation && type == other.type
+                    && (mapper == null ? other.mapper == null : mapper.equals(other.mapper));
+        }
+
+        @Override
+        public String toString() {
+            return mapper + " " + operation + " " + (type == null ? "?" : type.getName());
+        }
+    }
+
+    public static final class Stats {
+        private final StatsKey key;
+        private final Histogram latency = new Histogram();
+        private final LongAdder sizeIn = new LongAdder();
+        private final LongAdder sizeOut = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+        Stats(StatsKey key) {
+            this.key = key;
+        }
+
+        public StatsKey getKey() {
+            return key;
+        }
+
+        /** Number of calls, errors included. */
+        public long getCount() {
+            return latency.count.sum();
+        }
+
+        public double getMeanNanos() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) latency.total.sum() / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile(0..100), so at most 2x the actual value.
+         */
+        public long getPercentileNanos(double percentile) {
+            return latency.percentile(percentile);
+        }
+
+        public long getSizeIn() {
+            return sizeIn.sum();
+        }
+
+        public long getSizeOut() {
+            return sizeOut.sum();
+        }
+
+        public long getErrorCount() {
+            long sum = 0;
+            for (LongAdder adder : errors.values()) {
+                sum += adder.sum();
+            }
+            return sum;
+        }
+
+        /** Error counts by exception class name. */
+        public Map<String, Long> getErrors() {
+            Map<String, Long> result = new TreeMap<String, Long>();
+            for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().sum());
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": count=" + getCount() + " meanNs=" + (long) getMeanNanos() + " p50Ns="
+                    + getPercentileNanos(50) + " p99Ns=" + getPercentileNanos(99) + " in=" + getSizeIn() + " out="
+                    + getSizeOut() + " errors=" + getErrors();
+        }
+    }
+
+    /**
+     * Lock free latency histogram. Bucket i counts the values in [2^(i-1), 2^i).
+     */
+    static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+            count.increment();
+            total.add(nanos);
+        }
+
+        long percentile(double percentile) {
+            long[] counts = new long[buckets.length];
+            long sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+                sum += counts[i];
+            }
+            long target = (long) Math.ceil(sum * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return 0;
+        }
+    }
+}
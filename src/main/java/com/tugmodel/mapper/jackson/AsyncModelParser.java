@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Parses values from a byte stream that arrives in chunks(e.g. NIO/Netty reads) without blocking and without waiting
+ * for the whole payload. The input is either a sequence of root values(NDJSON or values separated by whitespace) or a
+ * single root array whose elements are emitted one by one.
+ * 
+ * For JSON the chunks are scanned for the boundaries of the values, a value being parsed as soon as its last byte
+ * arrived. Only the bytes of the value in progress are kept. Other formats are parsed when the input is complete.
+ * 
+ * Back-pressure: {@link #feed(ByteBuffer)} returns a future that completes once the consumer took enough values
+ * through {@link #next()}, the producer should not read more input before that.
+ * 
+ * Feeding is expected from one thread at a time(the I/O thread of a connection), values are parsed in that thread.
+ */
+public class AsyncModelParser<T> {
+    private final ObjectReader reader;
+    private final boolean arrayElements;
+    private final int maxPending;
+    private final boolean json;
+
+    // Parsed values not yet taken and the next() calls waiting for values.
+    private final ArrayDeque<Object> ready = new ArrayDeque<Object>();
+    private final ArrayDeque<CompletableFuture<T>> waiting = new ArrayDeque<CompletableFuture<T>>();
+    private CompletableFuture<Void> capacity;
+    private boolean ended;
+    private Throwable failure;
+
+    // Bytes of the value in progress(all the input for non JSON formats).
+    private byte[] value = new byte[1024];
+    private int length;
+    private final Scanner scanner = new Scanner();
+
+    /**
+     * @param reader The reader of the values, e.g. from {@link JacksonMapper#getReader(Class)}.
+     * @param arrayElements True if the input is a root array whose elements are the values.
+     * @param maxPending The number of parsed values not yet taken after which the feed futures wait.
+     */
+    public AsyncModelParser(ObjectReader reader, boolean arrayElements, int maxPending) {
+        this.reader = reader;
+        this.arrayElements = arrayElements;
+        this.maxPending = maxPending;
+        this.json = JsonFactory.FORMAT_NAME_JSON.equals(reader.getFactory().getFormatName());
+    }
+
+    /**
+     * Consumes the remaining bytes of the chunk.
+     * 
+     * @return A future completed when more input can be fed, already completed if there is room.
+     */
+    public CompletableFuture<Void> feed(ByteBuffer chunk) {
+        List<Runnable> callbacks = new ArrayList<Runnable>();
+        CompletableFuture<Void> result;
+        synchronized (this) {
+            if (ended) {
+                throw new IllegalStateException("Input already completed");
+            }
+            if (failure == null) {
+                try {
+                    if (json) {
+                        scan(chunk, callbacks);
+                    } else {
+                        append(chunk, chunk.position(), chunk.remaining());
+                        chunk.position(chunk.limit());
+                    }
+                } catch (Exception e) {
+                    fail(e, callbacks);
+                }
+            }
+            if (failure != null || ready.size() < maxPending) {
+                result = CompletableFuture.completedFuture(null);
+            } else {
+                if (capacity == null) {
+                    capacity = new CompletableFuture<Void>();
+                }
+                result = capacity;
+            }
+        }
+        run(callbacks);
+        return result;
+    }
+
+    /**
+     * Marks the end of the input. The remaining next() calls complete with null.
+     */
+    public void complete() {
+        List<Runnable> callbacks = new ArrayList<Runnable>();
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            if (failure == null) {
+                try {
+                    if (json) {
+                        scanner.end(callbacks);
+                    } else {
+                        MappingIterator<Object> it = reader.readValues(value, 0, length);
+                        while (it.hasNextValue()) {
+                            emit(it.nextValue(), callbacks);
+                        }
+                    }
+                } catch (Exception e) {
+                    fail(e, callbacks);
+                }
+            }
+            value = null;
+            while (failure == null && !waiting.isEmpty()) {
+                final CompletableFuture<T> future = waiting.poll();
+                callbacks.add(() -> future.complete(null));
+            }
+        }
+        run(callbacks);
+    }
+
+    /**
+     * The next value, completing with null after the end of the input or exceptionally if the input is invalid. The
+     * null values of the input are skipped so that null always means the end.
+     */
+    public CompletableFuture<T> next() {
+        Runnable resume = null;
+        CompletableFuture<T> result;
+        synchronized (this) {
+            if (!ready.isEmpty()) {
+                Object next = ready.poll();
+                result = CompletableFuture.completedFuture((T) next);
+                if (capacity != null && ready.size() < maxPending) {
+                    final CompletableFuture<Void> resumed = capacity;
+                    capacity = null;
+                    resume = () -> resumed.complete(null);
+                }
+            } else if (failure != null) {
+                result = new CompletableFuture<T>();
+                result.completeExceptionally(failure);
+            } else if (ended) {
+                result = CompletableFuture.completedFuture(null);
+            } else {
+                result = new CompletableFuture<T>();
+                waiting.add(result);
+            }
+        }
+        if (resume != null) {
+            resume.run();
+        }
+        return result;
+    }
+
+    private void scan(ByteBuffer chunk, List<Runnable> callbacks) throws IOException {
+        int start = chunk.position();
+        int limit = chunk.limit();
+        for (int i = start; i < limit; i++) {
+            byte b = chunk.get(i);
+            int action = scanner.next(b);
+            if (action == Scanner.VALUE_START) {
+                start = i;
+            } else if (action == Scanner.SKIP) {
+                start = i + 1;
+            } else if (action == Scanner.VALUE_END_BEFORE) {
+                // Scalar terminated by this byte.
+                append(chunk, start, i - start);
+                parseValue(callbacks);
+                start = i + 1;
+            } else if (action == Scanner.VALUE_END) {
+                append(chunk, start, i + 1 - start);
+                parseValue(callbacks);
+                start = i + 1;
+            }
+        }
+        if (scanner.inValue() && start < limit) {
+            append(chunk, start, limit - start);
+        }
+        chunk.position(limit);
+    }
+
+    private void append(ByteBuffer chunk, int from, int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (length + count > value.length) {
+            value = Arrays.copyOf(value, Math.max(value.length * 2, length + count));
+        }
+        ByteBuffer src = chunk.duplicate();
+        src.limit(from + count).position(from);
+        src.get(value, length, count);
+        length += count;
+    }
+
+    private void parseValue(List<Runnable> callbacks) throws IOException {
+        Object parsed = reader.readValue(value, 0, length);
+        length = 0;
+        emit(parsed, callbacks);
+    }
+
+    private void emit(Object parsed, List<Runnable> callbacks) {
+        if (parsed == null) {
+            return;
+        }
+        final CompletableFuture<T> future = waiting.poll();
+        if (future != null) {
+            callbacks.add(() -> future.complete((T) parsed));
+        } else {
+            ready.add(parsed);
+        }
+    }
+
+    private void fail(Throwable e, List<Runnable> callbacks) {
+        failure = e;
+        while (!waiting.isEmpty()) {
+            final CompletableFuture<T> future = waiting.poll();
+            callbacks.add(() -> future.completeExceptionally(e));
+        }
+        if (capacity != null) {
+            final CompletableFuture<Void> resumed = capacity;
+            capacity = null;
+            callbacks.add(() -> resumed.complete(null));
+        }
+    }
+
+    // Outside the lock since the futures run their dependent stages synchronously.
+    private static void run(List<Runnable> callbacks) {
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Finds where the top level values start and end. Structural characters are ASCII so scanning UTF-8 bytes is
+     * safe. Knows about strings and comments, the values themselves are validated by the parser.
+     */
+    private final class Scanner {
+        static final int NONE = 0, VALUE_START = 1, VALUE_END = 2, VALUE_END_BEFORE = 3, SKIP = 4;
+
+        private int depth;
+        private boolean inString, escaped, scalar, started, inArray, arrayEnded;
+        private boolean slash, lineComment, blockComment, star;
+        private boolean inValue;
+        private int bom;
+
+        boolean inValue() {
+            return inValue;
+        }
+
+        int next(byte b) throws IOException {
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                    if (depth == 0) {
+                        inValue = false;
+                        return VALUE_END;
+                    }
+                }
+                return NONE;
+            }
+            if (scalar) {
+                // A comment also ends a scalar, its bytes must not become part of it.
+                if (isDelimiter(b) || b == '/') {
+                    scalar = false;
+                    inValue = false;
+                    // The delimiter is handled as if outside the value.
+                    if (!comment(b) && outside(b) == VALUE_START) {
+                        throw new IOException("Unexpected '" + (char) b + "' after a value");
+                    }
+                    return VALUE_END_BEFORE;
+                }
+                return NONE;
+            }
+            if (comment(b)) {
+                return inValue ? NONE : SKIP;
+            }
+            if (inValue) {
+                if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        inValue = false;
+                        return VALUE_END;
+                    }
+                }
+                return NONE;
+            }
+            return outside(b);
+        }
+
+        private int outside(byte b) throws IOException {
+            if (!started && bom < 3 && (b & 0xFF) == (bom == 0 ? 0xEF : bom == 1 ? 0xBB : 0xBF)) {
+                bom++;
+                return SKIP;
+            }
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return SKIP;
+            }
+            if (arrayElements) {
+                if (!started) {
+                    if (b != '[') {
+                        throw new IOException("Expected a root array but got '" + (char) b + "'");
+                    }
+                    started = true;
+                    inArray = true;
+                    return SKIP;
+                }
+                if (arrayEnded) {
+                    throw new IOException("Unexpected '" + (char) b + "' after the root array");
+                }
+                if (b == ',') {
+                    return SKIP;
+                }
+                if (b == ']') {
+                    inArray = false;
+                    arrayEnded = true;
+                    return SKIP;
+                }
+            }
+            started = true;
+            inValue = true;
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth = 1;
+            } else {
+                scalar = true;
+            }
+            return VALUE_START;
+        }
+
+        private boolean comment(byte b) throws IOException {
+            if (lineComment) {
+                lineComment = b != '\n' && b != '\r';
+                return true;
+            }
+            if (blockComment) {
+                if (star && b == '/') {
+                    blockComment = false;
+                }
+                star = b == '*';
+                return true;
+            }
+            if (slash) {
+                slash = false;
+                if (b == '/') {
+                    lineComment = true;
+                    return true;
+                } else if (b == '*') {
+                    blockComment = true;
+                    star = false;
+                    return true;
+                }
+                if (!inValue) {
+                    // The '/' was skipped, the parser would not see it.
+                    throw new IOException("Unexpected '/'");
+                }
+                // Not a comment, part of the value so left to the parser to report.
+                return false;
+            }
+            if (b == '/' && !inString) {
+                slash = true;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isDelimiter(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ',' || b == ']' || b == '}';
+        }
+
+        void end(List<Runnable> callbacks) throws IOException {
+            if (scalar) {
+                scalar = false;
+                inValue = false;
+                parseValue(callbacks);
+            }
+            if (inValue || inArray || blockComment || slash) {
+                throw new IOException("Unexpected end of input");
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maps the elements of a batch on a ForkJoinPool. The range is split in halves until a part is light enough to be
+ * mapped by one worker. The weight of an element is its payload length when known, so a few large documents are
+ * spread over the workers just like many small ones, while a small batch stays on the caller thread where the
+ * forking would cost more than the mapping.
+ */
+final class BatchTask<S, T> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    /** Below this total weight(~ bytes of payload) the batch is not worth splitting. */
+    static final long MIN_PARALLEL_WEIGHT = 64 * 1024;
+    /** Parts per worker, more than one so that the workers that finish early can steal from the others. */
+    private static final int PARTS_PER_WORKER = 4;
+
+    private final List<? extends S> sources;
+    private final Function<? super S, ? extends T> op;
+    // Prefix sums, weights[i] is the weight of the elements before i.
+    private final long[] weights;
+    private final MappingResult<T>[] results;
+    private final long threshold;
+    private final int from;
+    private final int to;
+
+    private BatchTask(List<? extends S> sources, Function<? super S, ? extends T> op, long[] weights,
+            MappingResult<T>[] results, long threshold, int from, int to) {
+        this.sources = sources;
+        this.op = op;
+        this.weights = weights;
+        this.results = results;
+        this.threshold = threshold;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return The results in the order of the sources.
+     */
+    static <S, T> List<MappingResult<T>> map(ForkJoinPool pool, List<? extends S> sources,
+            Function<? super S, ? extends T> op, ToLongFunction<? super S> weigher) {
+        if (!(sources instanceof RandomAccess)) {
+            sources = new ArrayList<S>(sources);
+        }
+        int size = sources.size();
+        long[] weights = new long[size + 1];
+        for (int i = 0; i < size; i++) {
+            weights[i + 1] = weights[i] + Math.max(1, weigher.applyAsLong(sources.get(i)));
+        }
+        MappingResult<T>[] results = new MappingResult[size];
+        long total = weights[size];
+        int parts = pool.getParallelism() * PARTS_PER_WORKER;
+        BatchTask<S, T> task = new BatchTask<S, T>(sources, op, weights, results,
+                Math.max(MIN_PARALLEL_WEIGHT, total / parts), 0, size);
+        if (pool.getParallelism() == 1 || total <= MIN_PARALLEL_WEIGHT) {
+            task.mapRange();
+        } else {
+            pool.invoke(task);
+        }
+        return Arrays.asList(results);
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= 1 || weights[to] - weights[from] <= threshold) {
+            mapRange();
+        } else {
+            int mid = split();
+            invokeAll(new BatchTask<S, T>(sources, op, weights, results, threshold, from, mid),
+                    new BatchTask<S, T>(sources, op, weights, results, threshold, mid, to));
+        }
+    }
+
+    // The index halving the weight of the range, so that both parts have about the same amount of work.
+    private int split() {
+        long half = weights[from] + (weights[to] - weights[from]) / 2;
+        int mid = Arrays.binarySearch(weights, from + 1, to, half);
+        if (mid < 0) {
+            mid = -mid - 1;
+        }
+        return Math.min(Math.max(mid, from + 1), to - 1);
+    }
+
+    private void mapRange() {
+        for (int i = from; i < to; i++) {
+            try {
+                results[i] = MappingResult.success(i, op.apply(sources.get(i)));
+            } catch (RuntimeException e) {
+                results[i] = MappingResult.failure(i, e);
+            }
+        }
+    }
+}
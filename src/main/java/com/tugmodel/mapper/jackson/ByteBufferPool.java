@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lock free pool of ByteBuffers in power of 2 size classes, each one a {@link SlotPool}. Acquiring and releasing
+ * allocates nothing and does not depend on the calling thread.
+ * 
+ * Buffers bigger than the largest size class are allocated on the heap and dropped, not pooled, so that rare huge
+ * payloads do not use up the direct memory.
+ */
+public class ByteBufferPool {
+    private static final int MIN_SHIFT = 10; // 1 KB
+    private static final int MAX_SHIFT = 24; // 16 MB
+    /** Capacity of the largest pooled buffers. */
+    public static final int MAX_POOLED_CAPACITY = 1 << MAX_SHIFT;
+
+    private static final ByteBufferPool DEFAULT =
+            new ByteBufferPool(true, 4 * Runtime.getRuntime().availableProcessors());
+
+    private final boolean direct;
+    private final SlotPool<ByteBuffer>[] classes;
+
+    public ByteBufferPool(boolean direct, int slotsPerClass) {
+        this.direct = direct;
+        this.classes = new SlotPool[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SlotPool<ByteBuffer>(slotsPerClass);
+        }
+    }
+
+    /**
+     * Shared pool of direct buffers.
+     */
+    public static ByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * A cleared buffer with at least the given capacity.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(minCapacity);
+        if (sizeClass < classes.length) {
+            ByteBuffer buffer = classes[sizeClass].poll();
+            if (buffer != null) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+        if (sizeClass >= classes.length) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        int capacity = 1 << (sizeClass + MIN_SHIFT);
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Gives back a buffer obtained from {@link #acquire(int)}. It must not be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+        // Only exact size class buffers, the others were not allocated by the pool.
+        if (sizeClass >= classes.length || capacity != 1 << (sizeClass + MIN_SHIFT) || buffer.isDirect() != direct) {
+            return;
+        }
+        // When full the buffer is left to the GC.
+        classes[sizeClass].offer(buffer);
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Attributes map of a model deserialized with compact storage, see {@link ModelShapes}. The values are kept in an array
+ * whose slots are given by a {@link ModelShape} shared with the other models of the class, so each model only pays for
+ * the array. Keys the shape can not take any more go to an overflow LinkedHashMap.
+ * 
+ * Iteration follows the shape order, then the overflow keys: "id" and "version" first, then the attributes of the meta
+ * if registered, then the other keys in the order they were first added. Unlike a LinkedHashMap a key removed and put
+ * again keeps its place.
+ * 
+ * NOTE: like the model itself this is not thread safe, only the shapes are shared.
+ */
+class CompactAttributeMap extends AbstractMap<String, Object> {
+    // Marks a slot holding null, an empty slot is null.
+    private static final Object NULL = new Object();
+
+    private ModelShape shape;
+    private Object[] values;
+    private int size;
+    private LinkedHashMap<String, Object> overflow;
+
+    CompactAttributeMap(ModelShape shape) {
+        this.shape = shape;
+        values = new Object[shape.size()];
+    }
+
+    ModelShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = shape.indexOf(key);
+        if (slot >= 0) {
+            return unmask(values[slot]);
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = shape.indexOf(key);
+        if (slot >= 0) {
+            return values[slot] != null;
+        }
+        return overflow != null && overflow.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = shape.indexOf(key);
+        if (slot < 0 && (overflow == null || !overflow.containsKey(key))) {
+            // Once there is an overflow the new keys go there too so that the iteration order stays the insertion one.
+            ModelShape next = overflow == null ? shape.with(key) : null;
+            if (next != null) {
+                shape = next;
+                if (next.size() > values.length) {
+                    // Spare slots for the next keys, see trim().
+                    values = Arrays.copyOf(values, Math.max(next.size(), values.length * 2));
+                }
+                slot = next.indexOf(key);
+            }
+        }
+        if (slot < 0) {
+            if (overflow == null) {
+                overflow = new LinkedHashMap<String, Object>();
+            }
+            return overflow.put(key, value);
+        }
+        Object old = values[slot];
+        values[slot] = value == null ? NULL : value;
+        if (old == null) {
+            size++;
+        }
+        return unmask(old);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = shape.indexOf(key);
+        if (slot >= 0) {
+            Object old = values[slot];
+            if (old != null) {
+                values[slot] = null;
+                size--;
+            }
+            return unmask(old);
+        }
+        return overflow == null ? null : overflow.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return overflow == null ? size : size + overflow.size();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        overflow = null;
+    }
+
+    /**
+     * Drops the spare slots once the model is filled, e.g. at the end of its deserialization.
+     */
+    void trim() {
+        if (values.length > shape.size()) {
+            values = Arrays.copyOf(values, shape.size());
+        }
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL ? null : value;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactAttributeMap.this.size();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = advance(0);
+        private int current = -1;
+        private Iterator<Map.Entry<String, Object>> overflowIterator;
+
+        private int advance(int slot) {
+            while (slot < values.length && values[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < values.length) {
+                return true;
+            }
+            if (overflowIterator == null && overflow != null) {
+                overflowIterator = overflow.entrySet().iterator();
+            }
+            return overflowIterator != null && overflowIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next < values.length) {
+                current = next;
+                next = advance(next + 1);
+                return new SlotEntry(current);
+            }
+            current = -1;
+            return overflowIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (current >= 0) {
+                if (values[current] == null) {
+                    throw new IllegalStateException();
+                }
+                values[current] = null;
+                size--;
+            } else if (overflowIterator != null) {
+                overflowIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    // Reads and writes through to the slot, like the entries of a HashMap.
+    private final class SlotEntry implements Map.Entry<String, Object> {
+        private final int slot;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return shape.keyAt(slot);
+        }
+
+        @Override
+        public Object getValue() {
+            return unmask(values[slot]);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[slot];
+            values[slot] = value == null ? NULL : value;
+            return unmask(old);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(other.getKey())
+                    && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * Loads config/meta files, one model per file, parsing them straight from a memory mapped region of the file instead
+ * of reading them into a String first. Uses the config reader mapper by default so comments are allowed.
+ * 
+ * With {@link #watch()} the loaded files are watched and when one changes only that file is parsed again and applied
+ * onto the already loaded model, so the instance handed out stays the same. Unchanged files(same checksum) are
+ * ignored. A file that fails to parse leaves its model as it was and is reported to the listeners, or logged by the
+ * watcher if there are none.
+ * 
+ * The changes are not applied with updateModel: it merges into the maps of the live model in place, where readers on
+ * other threads could see them half done, and it keeps the attributes removed from the file. Instead the fresh
+ * attributes replace the model map, see {@link #apply(Model, Model)}.
+ * 
+ * NOTE: on Windows a mapped file can not be replaced until the buffer is garbage collected. The buffers are only
+ *       used while parsing but editors saving through a rename may still fail occasionally.
+ */
+public class ConfigFileLoader implements Closeable {
+
+    public interface Listener {
+        /** Called after the changes of the file were applied on the model. */
+        void onReload(Path file, Model model);
+
+        void onError(Path file, Exception e);
+    }
+
+    private static final Logger LOG = Logger.getLogger(ConfigFileLoader.class.getName());
+
+    private final JacksonMapper<Model> mapper;
+    private final ConcurrentMap<Path, Loaded> files = new ConcurrentHashMap<Path, Loaded>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final Map<Path, WatchKey> watchedDirs = new ConcurrentHashMap<Path, WatchKey>();
+    private volatile WatchService watchService;
+    private volatile Thread watcher;
+
+    public ConfigFileLoader() {
+        this(JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON));
+    }
+
+    public ConfigFileLoader(JacksonMapper<Model> mapper) {
+        this.mapper = mapper;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Parses the file into the model class of the mapper and keeps track of it for reloading.
+     */
+    public Model load(Path file) {
+        return load(file, null);
+    }
+
+    public <T extends Model> T load(Path file, Class<T> modelClass) {
+        Path path = file.toAbsolutePath().normalize();
+        try {
+            ByteBuffer content = map(path);
+            Model model = parse(path, content, modelClass);
+            files.put(path, new Loaded(model, modelClass, checksum(content)));
+            if (watchService != null) {
+                watchDir(path.getParent());
+            }
+            return (T) model;
+        } catch (IOException e) {
+            return (T) mapper.reThrow(e);
+        }
+    }
+
+    private void rethrow(Exception e) {
+        if (e instanceof RuntimeException) {
+            // Already reported by the mapper, e.g. with the line number of a parse error.
+            throw (RuntimeException) e;
+        }
+        mapper.reThrow(e);
+    }
+
+    /**
+     * The model loaded from the file, null if not loaded.
+     */
+    public Model get(Path file) {
+        // The map handoff also publishes the attributes of the last reload, see apply().
+        Loaded loaded = files.get(file.toAbsolutePath().normalize());
+        return loaded == null ? null : loaded.model;
+    }
+
+    /**
+     * Checks the file now and applies its changes on the loaded model. The errors are reported to the listeners, or
+     * thrown if there are none.
+     * 
+     * @return true if the file changed.
+     */
+    public boolean reload(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        Loaded loaded = files.get(path);
+        if (loaded == null || !Files.isRegularFile(path)) {
+            return false;
+        }
+        try {
+            ByteBuffer content = map(path);
+            if (!content.hasRemaining()) {
+                // Most likely truncated by an editor that is still writing it, a modify event follows.
+                return false;
+            }
+            long checksum = checksum(content);
+            synchronized (loaded.model) {
+                Loaded current = files.get(path);
+                if (checksum == current.checksum) {
+                    return false;
+                }
+                Model fresh = parse(path, content, loaded.modelClass);
+                apply(fresh, loaded.model);
+                // Put again so that get() sees the new attributes, Model.data being a plain field.
+                files.put(path, new Loaded(loaded.model, loaded.modelClass, checksum));
+            }
+            for (Listener listener : listeners) {
+                listener.onReload(path, loaded.model);
+            }
+            return true;
+        } catch (Exception e) {
+            if (listeners.isEmpty()) {
+                rethrow(e);
+            }
+            for (Listener listener : listeners) {
+                listener.onError(path, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Starts watching the loaded files(and the ones loaded later) in a daemon thread.
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path path : files.keySet()) {
+            watchDir(path.getParent());
+        }
+        watcher = new Thread(this::watchLoop, "tugmodel-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+            watchedDirs.clear();
+        }
+    }
+
+    private void watchDir(Path dir) throws IOException {
+        if (!watchedDirs.containsKey(dir)) {
+            watchedDirs.put(dir, dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+    }
+
+    private void watchLoop() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        for (Path path : files.keySet()) {
+                            watchedReload(path);
+                        }
+                    } else {
+                        Path path = dir.resolve((Path) event.context());
+                        if (files.containsKey(path)) {
+                            watchedReload(path);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The watcher must survive a bad file.
+    private void watchedReload(Path path) {
+        try {
+            reload(path);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Can not reload " + path, e);
+        }
+    }
+
+    private Model parse(Path path, ByteBuffer content, Class<? extends Model> modelClass) {
+        MappedFileInputStream in = new MappedFileInputStream(path, content.duplicate());
+        return modelClass == null ? mapper.deserialize(in) : mapper.deserialize(in, modelClass);
+    }
+
+    /**
+     * Brings the model to the state of the fresh one. The child models of the same class keep their identity, the
+     * other values are the fresh ones, so the attributes no longer in the file are gone.
+     * 
+     * The loaded maps are never changed: the new attributes of each model are built in the fresh map which then
+     * replaces the model map. Model.data is a plain field though, so only the threads getting the model through
+     * {@link #get(Path)} or the listeners after the reload are guaranteed to see the new map fully built. Other
+     * threads holding on to the model need their own synchronization.
+     */
+    protected void apply(Model fresh, Model model) {
+        Map<String, Object> freshData = ModelAccess.data(fresh);
+        Map<String, Object> data = ModelAccess.data(model);
+        Map<String, Object> kept = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : freshData.entrySet()) {
+            Object value = data.get(entry.getKey());
+            Object freshValue = entry.getValue();
+            if (value instanceof Model && freshValue != null && value.getClass() == freshValue.getClass()) {
+                apply((Model) freshValue, (Model) value);
+                kept.put(entry.getKey(), value);
+            }
+        }
+        freshData.putAll(kept);
+        ModelAccess.setData(model, freshData);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static long checksum(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        return crc.getValue();
+    }
+
+    private static final class Loaded {
+        private final Model model;
+        private final Class<? extends Model> modelClass;
+        private final long checksum;
+
+        Loaded(Model model, Class<? extends Model> modelClass, long checksum) {
+            this.model = model;
+            this.modelClass = modelClass;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Wire formats supported by the JacksonMappers. The binary ones need the matching optional jackson-dataformat
+ * dependency on the classpath. Each factory is only loaded when its format is used.
+ */
+public enum JacksonFormat {
+    JSON("com.fasterxml.jackson.core.JsonFactory") {
+        @Override
+        public JsonFactory createFactory() {
+            return new JsonFactory();
+        }
+    },
+    SMILE("com.fasterxml.jackson.dataformat.smile.SmileFactory") {
+        @Override
+        public JsonFactory createFactory() {
+            SmileFactory factory = new SmileFactory();
+            // Back references for the repeated attribute names(default) and also for the short repeated values.
+            factory.enable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+            factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+            return factory;
+        }
+    },
+    CBOR("com.fasterxml.jackson.dataformat.cbor.CBORFactory") {
+        @Override
+        public JsonFactory createFactory() {
+            return new CBORFactory();
+        }
+    },
+    MESSAGE_PACK("org.msgpack.jackson.dataformat.MessagePackFactory") {
+        @Override
+        public JsonFactory createFactory() {
+            return new CopyableMessagePackFactory();
+        }
+    };
+
+    // By name so that the optional factories are not loaded.
+    private final String factoryClassName;
+
+    JacksonFormat(String factoryClassName) {
+        this.factoryClassName = factoryClassName;
+    }
+
+    public abstract JsonFactory createFactory();
+
+    /**
+     * The format written by the factory, from its closest known class. Any other JsonFactory subclass(e.g.
+     * MappingJsonFactory) is taken as JSON.
+     * 
+     * NOTE: JsonFactory.canHandleBinaryNatively() can not be used for this since some binary factories(MessagePack)
+     * return false.
+     */
+    public static JacksonFormat of(JsonFactory factory) {
+        for (Class<?> cls = factory.getClass(); cls != null; cls = cls.getSuperclass()) {
+            for (JacksonFormat format : values()) {
+                if (format.factoryClassName.equals(cls.getName())) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * MessagePackFactory does not implement copy() which ObjectMapper.copy() needs, e.g. for the mapper refresh on
+     * meta changes, see {@link JacksonMapper#refreshMapper()}.
+     */
+    private static class CopyableMessagePackFactory extends MessagePackFactory {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public JsonFactory copy() {
+            CopyableMessagePackFactory copy = new CopyableMessagePackFactory();
+            copy._factoryFeatures = _factoryFeatures;
+            copy._parserFeatures = _parserFeatures;
+            copy._generatorFeatures = _generatorFeatures;
+            return copy;
+        }
+    }
+}
@@ -14,13 +14,58 @@
  */
 package com.tugmodel.mapper.jackson;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.tugmodel.client.mapper.BaseMapper;
 import com.tugmodel.client.model.Model;
+import com.tugmodel.client.model.meta.Meta;
+import com.tugmodel.mapper.jackson.MapperInstrumentation.Operation;
 
 /**
  * Mapper implementation using Jackson. TODO: Configure Mapper via a
@@ -30,30 +75,442 @@ import com.tugmodel.client.model.Model;
  * 
  * NOTE: getters and setters are used when serializing/deserializing a model. Also for attributes set using the generic
  *       set/get methods jsonanygetter and jsonanysetter annotations are used.
+ * 
+ * NOTE: the deserialize/updateModel methods accept as source a String but also byte[], ByteBuffer, InputStream, Reader,
+ *       File and URL. These are parsed directly without first building an intermediate String. Likewise the
+ *       serialize overloads taking an OutputStream/Writer and serializeAsBytes write the encoded payload directly.
+ * 
+ * NOTE: ObjectReader/ObjectWriter instances are immutable and thread safe so they are built once per (type, view) and
+ *       reused. This way the root (de)serializers are resolved only once instead of on every readValue/writeValue.
+ * 
+ * NOTE: partial serialization is done with a {@link Projection} instead of @JsonFilter since the filters would need
+ *       an annotation on the mixins of every flavour and still visit every attribute.
+ * 
+ * NOTE: extract/extractAll read single values by JSON Pointer from a serialized model without deserializing it.
+ * 
+ * NOTE: serialize/deserialize/updateModel/convert/extract report to a {@link MapperInstrumentation}, a no-op by
+ * default.
+ * 
+ * NOTE: replication can send only the changed attributes with serializeDelta, an RFC 7396 merge patch applied with
+ *       updateModel in PATCH mode.
+ * 
+ * NOTE: {@link #setSerializedFormCache(SerializedFormCache)} caches the serialized form of the models per id and
+ *       version, including the nested ones which are spliced into their parents.
+ * 
+ * NOTE: with {@link #setCompactStorage(boolean)} the deserialized models keep their attributes in a shared shape
+ *       value array instead of a LinkedHashMap, see {@link ModelShapes}.
+ * 
+ * NOTE: the deserializeAll/serializeAll overloads taking a List map independent documents in parallel and return a
+ *       {@link MappingResult} per element.
  */
 public abstract class JacksonMapper<M extends Model> extends BaseMapper<M> {
     public static final String KEY_CLASS = "@c";
-    protected ObjectMapper mapper;
+    protected volatile ObjectMapper mapper;
+    // Registry of pre-built readers/writers. Invalidated whenever the underlying ObjectMapper changes.
+    private final ConcurrentMap<CodecKey, ObjectReader> readers = new ConcurrentHashMap<CodecKey, ObjectReader>();
+    private final ConcurrentMap<CodecKey, ObjectWriter> writers = new ConcurrentHashMap<CodecKey, ObjectWriter>();
+    private final ConcurrentMap<Projection, ProjectionSerializer> projections =
+            new ConcurrentHashMap<Projection, ProjectionSerializer>();
+    private static final int MAX_PROJECTIONS = 256;
+    // Whether the models of a class are read with type information, see updated().
+    private final ConcurrentMap<Class<?>, Boolean> typedModels = new ConcurrentHashMap<Class<?>, Boolean>();
+    // Parsed values an AsyncModelParser holds before asking for back-pressure.
+    private static final int DEFAULT_MAX_PENDING = 64;
+    // Weight of a batch element whose payload length is unknown, about the size of a typical document.
+    private static final long DEFAULT_WEIGHT = 1024;
+    private volatile ObjectWriter streamWriter;
+    // Generators reused by the ByteBuffer serialize methods, bound to the current ObjectMapper.
+    private volatile SlotPool<ReusableGenerator> generators;
+    // Initial size of the pooled buffers, follows the recent payload sizes so that they rarely need to grow.
+    private volatile int pooledSizeHint = MIN_POOLED_SIZE_HINT;
+    private static final int MIN_POOLED_SIZE_HINT = 1024;
+    private volatile Class<?> modelClass;
+    // Resolved from the factory of the current ObjectMapper.
+    private volatile JacksonFormat format;
+    private volatile MapperInstrumentation instrumentation = MapperInstrumentation.NOOP;
+    // Null when the serialized forms are not cached.
+    private volatile SerializedFormCache formCache;
+    // Null when the compact storage is off.
+    private volatile ModelShapes shapes;
+    // Set on the instances shared through JacksonMappers, see freeze().
+    private volatile boolean frozen;
+    // Resolved once, null when the JDK does not allow it(other implementation, module restrictions).
+    private static final Field FILE_INPUT_STREAM_PATH = fileInputStreamPath();
+    private static final long NOT_TIMED = Long.MIN_VALUE;
 
     public abstract ObjectMapper initMapper();
 
+    /**
+     * The mapper flavour, reported to the instrumentation.
+     */
+    public String getName() {
+        return getClass().getName();
+    }
+
+    public MapperInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    public void setInstrumentation(MapperInstrumentation instrumentation) {
+        checkNotFrozen();
+        this.instrumentation = instrumentation == null ? MapperInstrumentation.NOOP : instrumentation;
+    }
+
+    /**
+     * Caches the serialized form of the models with an id and a version, see {@link SerializedFormCache}. Null turns
+     * the caching off.
+     */
+    public void setSerializedFormCache(SerializedFormCache formCache) {
+        checkNotFrozen();
+        this.formCache = formCache;
+        // The writers carry the cache as an attribute.
+        writers.clear();
+        streamWriter = null;
+    }
+
+    public SerializedFormCache getSerializedFormCache() {
+        return formCache;
+    }
+
+    /**
+     * Turns on/off the compact storage of the deserialized models, see {@link ModelShapes}. The model attributes are
+     * then kept in a value array indexed through a key table shared by the models of the same class, which takes far
+     * less memory than a LinkedHashMap for models kept around(caches). The shapes are seeded from the metas.
+     * 
+     * NOTE: the attributes are then iterated(and serialized) in the shape order instead of the insertion one: "id",
+     * "version", the meta attributes, then the other keys in the order they were first added, see
+     * {@link CompactAttributeMap}.
+     * 
+     * @throws IllegalStateException If the {@link ModelModule} is not registered, the other mappers fill the models
+     *             through the any setter which does not use the shapes.
+     */
+    public void setCompactStorage(boolean compact) {
+        checkNotFrozen();
+        if (compact == (shapes != null)) {
+            return;
+        }
+        if (compact) {
+            if (!hasModelModule()) {
+                throw new IllegalStateException("Compact storage needs the ModelModule registered in " + getName());
+            }
+            ModelShapes result = new ModelShapes();
+            result.registerAll(Meta.s.fetchAll());
+            shapes = result;
+        } else {
+            shapes = null;
+        }
+        // The readers carry the shapes as an attribute.
+        readers.clear();
+    }
+
+    private boolean hasModelModule() {
+        try {
+            // ModelModule registers both the serializer and the deserializer.
+            JsonSerializer<?> serializer = getMapper().getSerializerProviderInstance()
+                    .findValueSerializer(Model.class, null);
+            return serializer instanceof ModelSerializer;
+        } catch (JsonMappingException e) {
+            return false;
+        }
+    }
+
+    public boolean isCompactStorage() {
+        return shapes != null;
+    }
+
+    /**
+     * The shapes used by the compact storage or null if it is off.
+     */
+    public ModelShapes getShapes() {
+        return shapes;
+    }
+
     public ObjectMapper getMapper() {
-        if (mapper == null) {
-            mapper = initMapper();
+        ObjectMapper result = mapper;
+        if (result == null) {
+            synchronized (this) {
+                result = mapper;
+                if (result == null) {
+                    result = initMapper();
+                    mapper = result;
+                }
+            }
         }
-        return mapper;
+        return result;
     }
 
     public void setMapper(ObjectMapper mapper) {
+        checkNotFrozen();
+        swapMapper(mapper);
+    }
+
+    // Also used by the meta changes and refreshes which keep the configuration, so allowed on frozen mappers.
+    private void swapMapper(ObjectMapper mapper) {
         this.mapper = mapper;
+        invalidate();
+    }
+
+    /**
+     * Makes the configuration setters(setMapper, setInstrumentation, setSerializedFormCache, setCompactStorage) throw
+     * {@link UnsupportedOperationException}. Used for the mappers shared through {@link JacksonMappers} so that one
+     * user can not change them for all the others, {@link JacksonMappers#configurableCopy(JacksonMapper)} gives a
+     * mapper of its own. The meta changes are still allowed, the metas being global anyway.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(getName()
+                    + " is shared and can not be configured, use JacksonMappers.configurableCopy() instead");
+        }
+    }
+
+    /**
+     * Drops all the cached readers/writers. They will be rebuilt on demand from the current ObjectMapper.
+     */
+    public void invalidate() {
+        readers.clear();
+        writers.clear();
+        projections.clear();
+        typedModels.clear();
+        streamWriter = null;
+        generators = null;
+        format = null;
+        // The tug config may have changed too.
+        modelClass = null;
+        SerializedFormCache cache = formCache;
+        if (cache != null) {
+            // The forms may depend on the replaced mixins/configuration.
+            cache.clear();
+        }
+    }
+
+    public ObjectReader getReader(Class<?> type) {
+        return getReader(type, null);
+    }
+
+    public ObjectReader getReader(Class<?> type, Class<?> view) {
+        CodecKey key = new CodecKey(type, view);
+        ObjectReader reader = readers.get(key);
+        if (reader == null) {
+            reader = getMapper().readerFor(type);
+            if (view != null) {
+                reader = reader.withView(view);
+            }
+            ModelShapes current = shapes;
+            if (current != null) {
+                reader = reader.withAttribute(ModelShapes.READER_ATTRIBUTE, current);
+            }
+            ObjectReader existing = readers.putIfAbsent(key, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * @param type The root type to prefetch the serializer for or null for a writer resolving it from the value.
+     */
+    public ObjectWriter getWriter(Class<?> type) {
+        return getWriter(type, null);
+    }
+
+    public ObjectWriter getWriter(Class<?> type, Class<?> view) {
+        CodecKey key = new CodecKey(type, view);
+        ObjectWriter writer = writers.get(key);
+        if (writer == null) {
+            writer = type == null ? getMapper().writer() : getMapper().writerFor(type);
+            if (view != null) {
+                writer = writer.withView(view);
+            }
+            SerializedFormCache cache = formCache;
+            if (cache != null && view == null) {
+                // The nested models are written by ModelSerializer which does not know about views.
+                writer = writer.withAttribute(SerializedFormCache.WRITER_ATTRIBUTE,
+                        cache.bind(this, getMapper().getFactory()));
+            }
+            ObjectWriter existing = writers.putIfAbsent(key, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Writer for caller owned streams, which are not closed.
+     */
+    protected ObjectWriter getStreamWriter() {
+        ObjectWriter writer = streamWriter;
+        if (writer == null) {
+            writer = getWriter(null).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            streamWriter = writer;
+        }
+        return writer;
+    }
+
+    /**
+     * Builds the readers/writers of the given types. Since ObjectReader/ObjectWriter eagerly fetch the root
+     * (de)serializers this resolves the introspection and mixins for the types and all their properties upfront.
+     */
+    public void warmUp(Collection<Class<?>> types) {
+        for (Class<?> type : types) {
+            getReader(type);
+            getWriter(type);
+        }
+    }
+
+    /**
+     * Adds the mixin of a new meta. Like the other meta changes it is applied to a copy of the mapper which then
+     * replaces the live one, see {@link #refreshMapper()}. If the mapper writes the meta ids as type ids the meta is
+     * also registered in its {@link MetaTypeIdResolver}.
+     * 
+     * NOTE: the resolver is changed outside of the monitor of the mapper since its listeners refresh the other mappers
+     * sharing it, each under its own monitor.
+     */
+    public void registerMeta(MixinsGenerator generator, Meta meta) {
+        MetaTypeIdResolver typeIds = getMetaTypeIds();
+        if (typeIds != null) {
+            typeIds.register(meta);
+        }
+        synchronized (this) {
+            ObjectMapper copy = getMapper().copy();
+            generator.register(meta, copy);
+            registerShape(meta);
+            swapMapper(copy);
+        }
+    }
+
+    public void replaceMeta(MixinsGenerator generator, Meta meta) {
+        MetaTypeIdResolver typeIds = getMetaTypeIds();
+        if (typeIds != null) {
+            typeIds.register(meta);
+        }
+        synchronized (this) {
+            ObjectMapper copy = getMapper().copy();
+            generator.replace(meta, copy);
+            registerShape(meta);
+            swapMapper(copy);
+        }
+    }
+
+    public void evictMeta(MixinsGenerator generator, Meta meta) {
+        MetaTypeIdResolver typeIds = getMetaTypeIds();
+        if (typeIds != null) {
+            // Before the copy, the other mappers sharing the resolver are refreshed by its listeners.
+            typeIds.evict(meta);
+        }
+        synchronized (this) {
+            ObjectMapper copy = getMapper().copy();
+            generator.evict(meta, copy);
+            ModelShapes current = shapes;
+            if (current != null) {
+                current.evict(meta);
+            }
+            swapMapper(copy);
+        }
+    }
+
+    /**
+     * @return The resolver of the type ids if the default typing of the mapper uses a {@link MetaTypeIdResolver}.
+     */
+    public MetaTypeIdResolver getMetaTypeIds() {
+        TypeIdResolver typeIds = defaultTypeIds(getMapper());
+        return typeIds instanceof MetaTypeIdResolver ? (MetaTypeIdResolver) typeIds : null;
+    }
+
+    /**
+     * @return The type ids of the default typing of the mapper, null if it has none.
+     */
+    private static TypeIdResolver defaultTypeIds(ObjectMapper objectMapper) {
+        SerializationConfig config = objectMapper.getSerializationConfig();
+        JavaType objectType = objectMapper.constructType(Object.class);
+        TypeResolverBuilder<?> typer = config.getDefaultTyper(objectType);
+        if (typer == null) {
+            return null;
+        }
+        TypeSerializer typeSerializer = typer.buildTypeSerializer(config, objectType,
+                Collections.<NamedType> emptyList());
+        return typeSerializer == null ? null : typeSerializer.getTypeIdResolver();
+    }
+
+    private void registerShape(Meta meta) {
+        ModelShapes current = shapes;
+        if (current != null) {
+            current.register(meta);
+        }
+    }
+
+    /**
+     * Jackson has no per type eviction for its serializer/deserializer caches, which may hold a type already written
+     * as a nested value or through convert, and its mixin registry is not safe to change while in use. So the mapper
+     * is swapped with a copy. The copy keeps the configuration, modules and mixins but starts with empty caches, which
+     * also drops the references to the replaced mixin classes.
+     */
+    protected synchronized void refreshMapper() {
+        swapMapper(getMapper().copy());
+    }
+
+    /**
+     * The model class configured in the tug config, resolved once, until {@link #invalidate()}.
+     */
+    public Class<?> getModelClass() throws ClassNotFoundException {
+        Class<?> cls = modelClass;
+        if (cls == null) {
+            if (getTugConfig() == null) {
+                return Model.class;
+            }
+            cls = Class.forName((String) getTugConfig().getModel().get("class"));
+            modelClass = cls;
+        }
+        return cls;
+    }
+
+    /**
+     * The wire format of the underlying factory.
+     */
+    public JacksonFormat getFormat() {
+        JacksonFormat result = format;
+        if (result == null) {
+            result = JacksonFormat.of(getMapper().getFactory());
+            format = result;
+        }
+        return result;
+    }
+
+    /**
+     * True when the underlying factory is a binary one(Smile, CBOR, ...). For these the serialize methods return
+     * byte[] instead of String.
+     */
+    public boolean isBinaryFormat() {
+        return getFormat().isBinary();
     }
 
     @Override
     public Object serialize(M src) {
+        long start = begin();
         try {
-            return getMapper().writeValueAsString(src);
+            // The runtime class is used as root type since a Model subclass may have extra properties.
+            Object result;
+            byte[] cached = cachedForm(src);
+            if (cached != null) {
+                result = isBinaryFormat() ? cached : new String(cached, StandardCharsets.UTF_8);
+            } else if (isBinaryFormat()) {
+                result = getWriter(src.getClass()).writeValueAsBytes(src);
+            } else {
+                result = getWriter(src.getClass()).writeValueAsString(src);
+            }
+            end(start, Operation.SERIALIZE, src.getClass(), MapperInstrumentation.UNKNOWN_SIZE, result);
+            return result;
         } catch (JsonProcessingException e) {
-            return reThrow(e);
+            return reThrow(e, start, Operation.SERIALIZE, src.getClass());
         }
     }
 
@@ -62,39 +519,599 @@ public abstract class JacksonMapper<M extends Model> extends BaseMapper<M> {
         // new TypeReference<Map<String, Object>
         // http://stackoverflow.com/questions/11936620/jackson-deserialising-json-string-typereference-vs-typefactory-constructcoll
         // http://stackoverflow.com/questions/14362247/jackson-adding-extra-fields-to-an-object-in-serialization
+        long start = begin();
+        Class<?> type = null;
         try {
-            // TODO: Cache model class to avoid forName().
             // return (M)getMapper().readValue(src.toString(), Model.class);
-            Class modelClass = Model.class;
-            if (getTugConfig() != null) {
-                modelClass = Class.forName((String) getTugConfig().getModel().get("class"));
-            }
-            //
-            return (M) getMapper().readValue(src.toString(), modelClass);
+            type = getModelClass();
+            M result = (M) readValue(getReader(type), src);
+            end(start, Operation.DESERIALIZE, type, src, null);
+            return result;
+        } catch (Exception e) {
+            return (M) reThrow(e, start, Operation.DESERIALIZE, type);
+        }
+    }
+
+    /**
+     * Same as {@link #deserialize(Object)} but the nested objects and arrays are only parsed when first read through
+     * the model. Serializing the model writes the untouched ones back without parsing them. Useful when only a few
+     * attributes of a large model are needed.
+     * 
+     * NOTE: needs the {@link ModelModule} to be registered, other mappers deserialize everything upfront.
+     */
+    public M deserializeLazy(Object src) {
+        long start = begin();
+        Class<?> type = null;
+        try {
+            type = getModelClass();
+            M result = (M) readValue(lazyReader(type, src), src);
+            end(start, Operation.DESERIALIZE, type, src, null);
+            return result;
+        } catch (Exception e) {
+            return (M) reThrow(e, start, Operation.DESERIALIZE, type);
+        }
+    }
+
+    public <T> T deserializeLazy(Object src, Class<T> destClass) {
+        long start = begin();
+        try {
+            T result = readValue(lazyReader(destClass, src), src);
+            end(start, Operation.DESERIALIZE, destClass, src, null);
+            return result;
         } catch (Exception e) {
-            return (M) reThrow(e);
+            return (T) reThrow(e, start, Operation.DESERIALIZE, destClass);
         }
     }
 
+    private ObjectReader lazyReader(Class<?> type, Object src) {
+        ObjectReader reader = getReader(type).withAttribute(LazyAttributeMap.READER_ATTRIBUTE,
+                getReader(Object.class));
+        if (src instanceof ByteBuffer && ((ByteBuffer) src).hasArray()) {
+            // Parsed from the middle of the backing array, see readValue.
+            ByteBuffer buf = (ByteBuffer) src;
+            reader = reader.withAttribute(LazyAttributeMap.OFFSET_ATTRIBUTE, buf.arrayOffset() + buf.position());
+        }
+        return reader;
+    }
+
     @Override
     public Object serialize(Object src) {
+        long start = begin();
+        try {
+            Object result;
+            if (isBinaryFormat()) {
+                result = getWriter(null).writeValueAsBytes(src);
+            } else {
+                result = getWriter(null).writeValueAsString(src);
+            }
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, result);
+            return result;
+        } catch (JsonProcessingException e) {
+            return reThrow(e, start, Operation.SERIALIZE, typeOf(src));
+        }
+    }
+
+    /**
+     * The serialized form of the model from the cache, serializing and caching it if missing. Null if there is no
+     * cache or the model is not cached, see {@link SerializedFormCache}.
+     */
+    private byte[] cachedForm(Model src) throws JsonProcessingException {
+        SerializedFormCache cache = formCache;
+        SerializedFormCache.Key key = cache == null ? null : cache.key(this, src, false);
+        if (key == null) {
+            return null;
+        }
+        byte[] form = (byte[]) cache.get(key);
+        if (form == null) {
+            form = getWriter(src.getClass()).writeValueAsBytes(src);
+            cache.put(key, form);
+        }
+        return form;
+    }
+
+    /**
+     * Serializes only the attributes of the projection, see {@link Projection}. The src can be a model, a map or a
+     * collection/array of them, e.g. the page of a list endpoint.
+     */
+    public Object serialize(Object src, Projection projection) {
+        long start = begin();
         try {
-            return getMapper().writeValueAsString(src);
+            Object root = new ProjectionSerializer.Projected(src, getProjectionSerializer(projection));
+            Object result;
+            if (isBinaryFormat()) {
+                result = getWriter(null).writeValueAsBytes(root);
+            } else {
+                result = getWriter(null).writeValueAsString(root);
+            }
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, result);
+            return result;
         } catch (JsonProcessingException e) {
-            return reThrow(e);
+            return reThrow(e, start, Operation.SERIALIZE, typeOf(src));
+        }
+    }
+
+    /**
+     * The serializer of a projection, contextualized for this mapper once and then reused.
+     */
+    protected ProjectionSerializer getProjectionSerializer(Projection projection) throws JsonMappingException {
+        ProjectionSerializer serializer = projections.get(projection);
+        if (serializer == null) {
+            serializer = (ProjectionSerializer) new ProjectionSerializer(projection)
+                    .createContextual(getMapper().getSerializerProviderInstance(), null);
+            if (projections.size() >= MAX_PROJECTIONS) {
+                projections.clear();
+            }
+            ProjectionSerializer existing = projections.putIfAbsent(projection, serializer);
+            if (existing != null) {
+                serializer = existing;
+            }
+        }
+        return serializer;
+    }
+
+    /**
+     * Serializes directly as UTF-8 bytes, without going through an intermediate String.
+     */
+    public byte[] serializeAsBytes(Object src) {
+        long start = begin();
+        try {
+            byte[] result = src instanceof Model ? cachedForm((Model) src) : null;
+            if (result == null) {
+                result = getWriter(null).writeValueAsBytes(src);
+            }
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, result);
+            return result;
+        } catch (JsonProcessingException e) {
+            return (byte[]) reThrow(e, start, Operation.SERIALIZE, typeOf(src));
+        }
+    }
+
+    public ByteBuffer serializeAsByteBuffer(Object src) {
+        return ByteBuffer.wrap(serializeAsBytes(src));
+    }
+
+    /**
+     * Writes the serialized form to the given stream. The stream is not closed.
+     */
+    public void serialize(Object src, OutputStream out) {
+        long start = begin();
+        try {
+            byte[] cached = src instanceof Model ? cachedForm((Model) src) : null;
+            if (cached != null) {
+                out.write(cached);
+            } else {
+                getStreamWriter().writeValue(out, src);
+            }
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, null);
+        } catch (IOException e) {
+            reThrow(e, start, Operation.SERIALIZE, typeOf(src));
+        }
+    }
+
+    /**
+     * Writes the serialized form into dest, starting at its position which is then moved after it. The bytes are the
+     * same as the ones of {@link #serializeAsBytes(Object)} but no byte[]/String is built for the result.
+     * 
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If dest is too small, its position is then left unchanged.
+     */
+    public int serialize(Object src, ByteBuffer dest) {
+        long startTime = begin();
+        int start = dest.position();
+        try {
+            ReusableGenerator gen = acquireGenerator();
+            if (gen == null) {
+                getStreamWriter().writeValue(new ByteBufferOutputStream(dest), src);
+            } else {
+                gen.write(getStreamWriter(), src, dest);
+                gen.release();
+            }
+            end(startTime, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, null);
+        } catch (BufferOverflowException e) {
+            dest.position(start);
+            throw e;
+        } catch (IOException e) {
+            if (isOverflow(e)) {
+                // Wrapped by Jackson when thrown from inside a serializer.
+                dest.position(start);
+                throw new BufferOverflowException();
+            }
+            reThrow(e, startTime, Operation.SERIALIZE, typeOf(src));
+        }
+        return dest.position() - start;
+    }
+
+    private static boolean isOverflow(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BufferOverflowException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link #serializePooled(Object, ByteBufferPool)} with the default pool of direct buffers.
+     */
+    public PooledOutputStream serializePooled(Object src) {
+        return serializePooled(src, ByteBufferPool.getDefault());
+    }
+
+    /**
+     * Serializes into buffers taken from the pool. The result must be closed once its buffer was consumed(e.g.
+     * written to a channel) so that the buffer goes back to the pool.
+     */
+    public PooledOutputStream serializePooled(Object src, ByteBufferPool pool) {
+        long start = begin();
+        PooledOutputStream out = new PooledOutputStream(pool, pooledSizeHint);
+        try {
+            ReusableGenerator gen = acquireGenerator();
+            if (gen == null) {
+                getStreamWriter().writeValue(out, src);
+            } else {
+                gen.write(getStreamWriter(), src, out);
+                gen.release();
+            }
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, null);
+        } catch (IOException e) {
+            out.close();
+            reThrow(e, start, Operation.SERIALIZE, typeOf(src));
+        } catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        updatePooledSizeHint(out.size());
+        return out;
+    }
+
+    /**
+     * Jumps to a bigger payload right away but decays slowly(1/16 of the difference per call) towards the smaller
+     * ones, so a single large payload does not make all the later ones take its size class. Capped to the largest
+     * pooled buffer. The racy update is fine for a hint.
+     */
+    private void updatePooledSizeHint(int size) {
+        int hint = pooledSizeHint;
+        int next = size >= hint ? size : hint - ((hint - size) >> 4);
+        next = Math.max(MIN_POOLED_SIZE_HINT, Math.min(next, ByteBufferPool.MAX_POOLED_CAPACITY));
+        if (next != hint) {
+            pooledSizeHint = next;
+        }
+    }
+
+    int getPooledSizeHint() {
+        return pooledSizeHint;
+    }
+
+    /**
+     * A pooled generator, or null when they can not be reused for this mapper(see {@link ReusableGenerator}). Not
+     * given back to the pool if writing fails.
+     */
+    private ReusableGenerator acquireGenerator() throws IOException {
+        SlotPool<ReusableGenerator> pool = generators;
+        if (pool == null) {
+            if (!ReusableGenerator.isSupported(getMapper().getFactory(), getStreamWriter())) {
+                return null;
+            }
+            pool = new SlotPool<ReusableGenerator>(4 * Runtime.getRuntime().availableProcessors());
+            generators = pool;
+        }
+        ReusableGenerator gen = pool.poll();
+        return gen != null ? gen : new ReusableGenerator(getMapper().getFactory(), pool);
+    }
+
+    /**
+     * Writes the serialized form to the given writer. The writer is not closed.
+     */
+    public void serialize(Object src, Writer out) {
+        long start = begin();
+        try {
+            getStreamWriter().writeValue(out, src);
+            end(start, Operation.SERIALIZE, typeOf(src), MapperInstrumentation.UNKNOWN_SIZE, null);
+        } catch (IOException e) {
+            reThrow(e, start, Operation.SERIALIZE, typeOf(src));
         }
     }
 
     @Override
     public <T> T deserialize(Object src, Class<T> destClass) {
+        long start = begin();
+        try {
+            T result = readValue(getReader(destClass), src);
+            end(start, Operation.DESERIALIZE, destClass, src, null);
+            return result;
+        } catch (Exception e) {
+            return (T) reThrow(e, start, Operation.DESERIALIZE, destClass);
+        }
+    }
+
+    /**
+     * Writes all the models to the stream through a single SequenceWriter so memory use does not depend on the number
+     * of models. The stream is not closed.
+     * 
+     * @param asArray If true a JSON array is written, otherwise newline delimited documents (NDJSON). For binary formats
+     *        the documents are simply written one after the other.
+     */
+    public void serializeAll(Iterable<? extends M> models, OutputStream out, boolean asArray) {
+        serializeAll(models.iterator(), out, asArray);
+    }
+
+    public void serializeAll(Stream<? extends M> models, OutputStream out, boolean asArray) {
+        serializeAll(models.iterator(), out, asArray);
+    }
+
+    protected void serializeAll(Iterator<? extends M> models, OutputStream out, boolean asArray) {
+        ObjectWriter writer = getStreamWriter();
+        try {
+            SequenceWriter seq;
+            if (asArray) {
+                seq = writer.writeValuesAsArray(out);
+            } else if (isBinaryFormat()) {
+                // Binary root values are self delimiting.
+                seq = writer.writeValues(out);
+            } else {
+                // Indentation would split a document over several lines.
+                seq = writer.without(SerializationFeature.INDENT_OUTPUT).withRootValueSeparator("\n").writeValues(out);
+            }
+            while (models.hasNext()) {
+                seq.write(models.next());
+            }
+            seq.close();
+        } catch (IOException e) {
+            reThrow(e);
+        }
+    }
+
+    /**
+     * Lazily reads the models from a JSON array or from a sequence of root level documents (e.g. NDJSON). Only the
+     * current model is kept in memory. The iterator closes the source when fully consumed.
+     */
+    public MappingIterator<M> deserializeIterator(Object src) {
+        try {
+            return readValues(getReader(getModelClass()), src);
+        } catch (Exception e) {
+            return (MappingIterator<M>) reThrow(e);
+        }
+    }
+
+    public <T> MappingIterator<T> deserializeIterator(Object src, Class<T> destClass) {
+        try {
+            return readValues(getReader(destClass), src);
+        } catch (Exception e) {
+            return (MappingIterator<T>) reThrow(e);
+        }
+    }
+
+    /**
+     * Same as {@link #deserializeIterator(Object)} but as a sequential Stream. Closing the stream closes the source.
+     */
+    public Stream<M> deserializeStream(Object src) {
+        final MappingIterator<M> it = deserializeIterator(src);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(() -> {
+                    try {
+                        it.close();
+                    } catch (IOException e) {
+                        reThrow(e);
+                    }
+                });
+    }
+
+    /**
+     * Deserializes the independent documents of a batch in parallel on the common ForkJoinPool, see
+     * {@link #deserializeAll(List, Class, ForkJoinPool)}.
+     */
+    public List<MappingResult<M>> deserializeAll(List<?> sources) {
         try {
-            return getMapper().readValue(src.toString(), destClass);
+            return deserializeAll(sources, (Class<M>) getModelClass(), ForkJoinPool.commonPool());
+        } catch (ClassNotFoundException e) {
+            return (List<MappingResult<M>>) reThrow(e);
+        }
+    }
+
+    public <T> List<MappingResult<T>> deserializeAll(List<?> sources, Class<T> destClass) {
+        return deserializeAll(sources, destClass, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Deserializes each source as by {@link #deserialize(Object, Class)}, splitting the batch over the workers of the
+     * pool. All workers share the same cached ObjectReader. How many parts the batch is split into depends on its
+     * size and on the payload length of the sources, a small batch is deserialized on the caller thread.
+     * 
+     * @return One result per source, in the order of the sources. A source that fails does not abort the others, its
+     *         error is in its result.
+     */
+    public <T> List<MappingResult<T>> deserializeAll(List<?> sources, final Class<T> destClass, ForkJoinPool pool) {
+        // Resolved upfront instead of concurrently by the first documents.
+        getReader(destClass);
+        return BatchTask.map(pool, sources, src -> deserialize(src, destClass), JacksonMapper::weightOf);
+    }
+
+    public List<MappingResult<Object>> serializeAll(List<? extends M> models) {
+        return serializeAll(models, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Serializes each model as by {@link #serialize(Model)}, splitting the batch over the workers of the pool.
+     * 
+     * @return One String(or byte[] for binary formats) result per model, in the order of the models.
+     */
+    public List<MappingResult<Object>> serializeAll(List<? extends M> models, ForkJoinPool pool) {
+        return BatchTask.map(pool, models, model -> serialize(model), model -> DEFAULT_WEIGHT);
+    }
+
+    private static long weightOf(Object src) {
+        long size = sizeOf(src);
+        return size == MapperInstrumentation.UNKNOWN_SIZE ? DEFAULT_WEIGHT : size;
+    }
+
+    /**
+     * The value at the JSON Pointer(e.g. "/tenant" or "/address/city") of the serialized model, without deserializing
+     * the rest of it. See {@link #extractAll(Object, String...)}.
+     * 
+     * @return The value or null if missing.
+     */
+    public Object extract(Object src, String pointer) {
+        return extractAll(src, pointer).get(pointer);
+    }
+
+    private static boolean isDataLayoutTypeId(TypeIdResolver typeIds, SerializerProvider provider, String id) {
+        try {
+            JavaType type = typeIds.typeFromId(provider, id);
+            return type != null && Model.class.isAssignableFrom(type.getRawClass())
+                    && ProjectionSerializer.isDataLayout(provider.findValueSerializer(type.getRawClass(), null));
+        } catch (IOException | IllegalArgumentException e) {
+            // An unknown id, reported if the value is read.
+            return false;
+        }
+    }
+
+    /**
+     * Streams the tokens of the serialized model(any source accepted by deserialize) and returns the values at the
+     * given JSON Pointers. The sub-trees not on the way to a pointer are skipped without being built, only the matched
+     * values are deserialized and the parsing stops once all of them are found. The pointers address the attributes of
+     * the model whatever the layout of the flavour(type id wrappers, the "data" object of the typed mapper).
+     * 
+     * @return The found values by pointer, in the order of the pointers. The pointers not found are missing.
+     */
+    public Map<String, Object> extractAll(Object src, String... pointers) {
+        long start = begin();
+        try {
+            ObjectMapper objectMapper = getMapper();
+            final SerializerProvider provider = objectMapper.getSerializerProviderInstance();
+            final TypeIdResolver typeIds = defaultTypeIds(objectMapper);
+            // The layout of the serializer the mapper resolves, as for the projections.
+            boolean rootDataLayout = ProjectionSerializer.isDataLayout(
+                    provider.findValueSerializer(getModelClass(), null));
+            PointerExtractor extractor = new PointerExtractor(getReader(Object.class), typeIds != null,
+                    rootDataLayout, id -> isDataLayoutTypeId(typeIds, provider, id), Arrays.asList(pointers));
+            Map<String, Object> found;
+            try (JsonParser p = createParser(src)) {
+                found = extractor.extract(p);
+            }
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (String pointer : pointers) {
+                if (found.containsKey(pointer)) {
+                    result.put(pointer, found.get(pointer));
+                }
+            }
+            end(start, Operation.EXTRACT, null, src, null);
+            return result;
         } catch (Exception e) {
-            return (T) reThrow(e);
+            return (Map<String, Object>) reThrow(e, start, Operation.EXTRACT, null);
+        }
+    }
+
+    /**
+     * A parser for the source, same sources as {@link #readValue(ObjectReader, Object)}.
+     */
+    protected JsonParser createParser(Object src) throws IOException {
+        JsonFactory factory = getMapper().getFactory();
+        if (src instanceof byte[]) {
+            return factory.createParser((byte[]) src);
+        } else if (src instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer) src).duplicate();
+            if (buf.hasArray()) {
+                return factory.createParser(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            }
+            return factory.createParser(new ByteBufferBackedInputStream(buf));
+        } else if (src instanceof InputStream) {
+            return factory.createParser((InputStream) src);
+        } else if (src instanceof Reader) {
+            return factory.createParser((Reader) src);
+        } else if (src instanceof File) {
+            return factory.createParser((File) src);
+        } else if (src instanceof URL) {
+            return factory.createParser((URL) src);
+        }
+        return factory.createParser(src.toString());
+    }
+
+    /**
+     * Parser for values arriving in chunks, see {@link AsyncModelParser}. Reads a sequence of root models.
+     */
+    public AsyncModelParser<M> newAsyncParser() {
+        try {
+            return new AsyncModelParser<M>(getReader(getModelClass()), false, DEFAULT_MAX_PENDING);
+        } catch (ClassNotFoundException e) {
+            return (AsyncModelParser<M>) reThrow(e);
+        }
+    }
+
+    /**
+     * @param arrayElements True to read the elements of a root array instead of a sequence of root values.
+     */
+    public <T> AsyncModelParser<T> newAsyncParser(Class<T> type, boolean arrayElements) {
+        return new AsyncModelParser<T>(getReader(type), arrayElements, DEFAULT_MAX_PENDING);
+    }
+
+    protected <T> MappingIterator<T> readValues(ObjectReader reader, Object src) throws IOException {
+        if (src instanceof byte[]) {
+            byte[] bytes = (byte[]) src;
+            return reader.readValues(bytes, 0, bytes.length);
+        } else if (src instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer) src).duplicate();
+            if (buf.hasArray()) {
+                return reader.readValues(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            }
+            return reader.readValues(new ByteBufferBackedInputStream(buf));
+        } else if (src instanceof InputStream) {
+            return reader.readValues((InputStream) src);
+        } else if (src instanceof Reader) {
+            return reader.readValues((Reader) src);
+        } else if (src instanceof File) {
+            return reader.readValues((File) src);
+        } else if (src instanceof URL) {
+            return reader.readValues((URL) src);
+        }
+        return reader.readValues(src.toString());
+    }
+
+    /**
+     * Reads from the source using the most direct ObjectReader overload for its type. Anything that is not a known
+     * binary or streaming source is read from its toString().
+     */
+    protected <T> T readValue(ObjectReader reader, Object src) throws IOException {
+        if (src instanceof byte[]) {
+            return reader.readValue((byte[]) src);
+        } else if (src instanceof ByteBuffer) {
+            // Work on a duplicate so that the position of the caller's buffer is not moved.
+            ByteBuffer buf = ((ByteBuffer) src).duplicate();
+            if (buf.hasArray()) {
+                return reader.readValue(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            }
+            return reader.readValue(new ByteBufferBackedInputStream(buf));
+        } else if (src instanceof InputStream) {
+            return reader.readValue((InputStream) src);
+        } else if (src instanceof Reader) {
+            return reader.readValue((Reader) src);
+        } else if (src instanceof File) {
+            return reader.readValue((File) src);
+        } else if (src instanceof URL) {
+            return reader.readValue((URL) src);
         }
+        return reader.readValue(src.toString());
+    }
+
+    /**
+     * How {@link #updateModel(Object, Model, MergeMode)} combines the attributes.
+     */
+    public enum MergeMode {
+        /** Each attribute of the source replaces the one in the destination, same as parsing the source onto it. */
+        SHALLOW,
+        /** Child models present in both are merged recursively instead of being replaced. */
+        DEEP,
+        /**
+         * The source is a {@link MergePatch}, either as built by {@link JacksonMapper#diff(ModelSnapshot, Model)} or
+         * serialized. Only the attributes in the patch are touched, in place.
+         */
+        PATCH
     }
 
     public void updateModel(Object src, M dest) {
+        updateModel(src, dest, MergeMode.SHALLOW);
+    }
+
+    public void updateModel(Object src, M dest, MergeMode mode) {
         // https://www.google.ro/search?q=screw+him&oq=screw+him&aqs=chrome..69i57j0l5.3257j0j4&sourceid=chrome&ie=UTF-8#q=jackson+serialize+on+existing+object&*
         // ATTENTION: Always specify the base Model.class on which the annotations are added.
         // https://www.google.com/webhp?sourceid=chrome-instant&ion=1&espv=2&ie=UTF-8#q=jackson+polymorphic+not+subtype+of&*
@@ -102,23 +1119,236 @@ public abstract class JacksonMapper<M extends Model> extends BaseMapper<M> {
         // ALTERNATIVE: use Model#merge and Mapper#deserialize.
         // Model srcModel = deserialize(src);
         // dest.merge(srcModel);
+        long start = begin();
         try {
             // getMapper().readerForUpdating(dest).forType(Model.class).readValue((String) src);
-            if (src instanceof String) {
-                getMapper().readerForUpdating(dest).readValue((String) src);
+            if (mode == MergeMode.PATCH) {
+                if (src instanceof MergePatch) {
+                    // The replaced values are still those of the model the patch was computed from.
+                    applyPatch((MergePatch) src, dest, true);
+                } else if (src != null) {
+                    applyPatch((MergePatch) readValue(getReader(MergePatch.class), src), dest, false);
+                }
             } else if (src instanceof Model) {
-                updateModel(serialize((M) src), dest);
+                if (mode == MergeMode.DEEP) {
+                    mergeDeep((Model) src, dest);
+                } else {
+                    mergeShallow(src, dest);
+                }
+            } else if (src != null) {
+                if (mode == MergeMode.DEEP) {
+                    mergeDeep((Model) readValue(getReader(dest.getClass()), src), dest);
+                } else {
+                    ObjectReader reader = getReader(dest.getClass());
+                    updated(readValue(isTyped(dest.getClass()) ? reader : reader.withValueToUpdate(dest), src), dest);
+                }
             }
+            end(start, Operation.UPDATE_MODEL, dest.getClass(),
+                    src instanceof Model || src instanceof MergePatch ? null : src, null);
         } catch (Exception e) {
-            reThrow(e);
+            reThrow(e, start, Operation.UPDATE_MODEL, dest.getClass());
         }
 
     }
 
+    /**
+     * Replays the serialization events of src directly onto dest through an in memory TokenBuffer. Same semantics as
+     * parsing the serialized src(any setter, nested models, type info) but without encoding and parsing any text.
+     */
+    protected void mergeShallow(Object src, Object dest) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(getMapper(), false);
+        getWriter(src.getClass()).writeValue(buffer, src);
+        ObjectReader reader = getReader(dest.getClass());
+        if (!isTyped(dest.getClass())) {
+            reader = reader.withValueToUpdate(dest);
+        }
+        updated(reader.readValue(buffer.asParser(getMapper())), dest);
+    }
+
+    /**
+     * Jackson does not update the given value when the class comes from the type information(default typing, "@c"),
+     * it leaves it as is or, depending on the inclusion, ignores it. So these models are read as a new instance whose
+     * attributes then replace those of dest, as the parsing onto dest would.
+     */
+    private boolean isTyped(Class<?> type) {
+        Boolean typed = typedModels.get(type);
+        if (typed == null) {
+            ObjectMapper objectMapper = getMapper();
+            try {
+                typed = objectMapper.getDeserializationContext().getFactory().findTypeDeserializer(
+                        objectMapper.getDeserializationConfig(), objectMapper.constructType(type)) != null;
+            } catch (JsonMappingException e) {
+                typed = false;
+            }
+            typedModels.put(type, typed);
+        }
+        return typed;
+    }
+
+    private void updated(Object result, Object dest) {
+        if (result != dest && result instanceof Model && dest instanceof Model) {
+            for (Map.Entry<String, Object> entry : ModelAccess.data((Model) result).entrySet()) {
+                ((Model) dest).set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    protected void mergeDeep(Model src, Model dest) throws IOException {
+        Map<String, Object> destData = ModelAccess.data(dest);
+        for (Map.Entry<String, Object> entry : ModelAccess.data(src).entrySet()) {
+            Object value = entry.getValue();
+            Object existing = destData.get(entry.getKey());
+            if (value instanceof Model && existing instanceof Model) {
+                mergeDeep((Model) value, (Model) existing);
+            } else {
+                dest.set(entry.getKey(), copyValue(value));
+            }
+        }
+    }
+
+    protected void applyPatch(MergePatch patch, Model dest, boolean copy) throws IOException {
+        Map<String, Object> data = ModelAccess.data(dest);
+        for (Map.Entry<String, Object> entry : patch.entries()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                data.remove(entry.getKey());
+            } else {
+                dest.set(entry.getKey(), patchedValue(data, entry.getKey(), value, copy));
+            }
+        }
+    }
+
+    private Object patchedValue(Map<String, Object> data, String name, Object value, boolean copy) throws IOException {
+        if (!(value instanceof MergePatch)) {
+            return copy ? copyValue(value) : value;
+        }
+        Object existing = data.get(name);
+        if (existing instanceof Model) {
+            applyPatch((MergePatch) value, (Model) existing, copy);
+            return existing;
+        }
+        // As in RFC 7396 a patch on anything but an object applies to an empty one. The map is copied since it may
+        // be an unmodifiable one.
+        Map<String, Object> map = existing instanceof Map
+                ? new LinkedHashMap<String, Object>((Map<String, Object>) existing) : new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : ((MergePatch) value).entries()) {
+            if (entry.getValue() == null) {
+                map.remove(entry.getKey());
+            } else {
+                map.put(entry.getKey(), patchedValue(map, entry.getKey(), entry.getValue(), copy));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Copy of the current state of the model, to later serialize only what changed since with
+     * {@link #serializeDelta(ModelSnapshot, Model)}.
+     */
+    public ModelSnapshot snapshot(M model) {
+        return ModelSnapshot.of(model);
+    }
+
+    /**
+     * The merge patch of the changes made to the model since the snapshot. Empty if nothing changed.
+     */
+    public MergePatch diff(ModelSnapshot before, M after) {
+        return MergePatch.diff(before.getAttributes(), ModelAccess.data(after));
+    }
+
+    /**
+     * The merge patch turning the before model into the after one.
+     */
+    public MergePatch diff(M before, M after) {
+        return MergePatch.diff(ModelAccess.data(before), ModelAccess.data(after));
+    }
+
+    /**
+     * Serializes only the changes since the snapshot, as an RFC 7396 merge patch. The receiving side applies it with
+     * updateModel in {@link MergeMode#PATCH} mode.
+     */
+    public Object serializeDelta(ModelSnapshot before, M after) {
+        return serialize(diff(before, after));
+    }
+
+    public Object serializeDelta(M before, M after) {
+        return serialize(diff(before, after));
+    }
+
+    /**
+     * Copies an attribute value the way the any setter would receive it when parsing, so src and dest do not end up
+     * sharing mutable children.
+     */
+    protected Object copyValue(Object value) throws IOException {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        TokenBuffer buffer = new TokenBuffer(getMapper(), false);
+        getWriter(null).writeValue(buffer, value);
+        return getReader(Object.class).readValue(buffer.asParser(getMapper()));
+    }
+
     @Override
     public <T> T convert(Object src, Class<T> destClass) {
-        return (T) getMapper().convertValue(src, destClass); // getMapper().writeValueAsString(src)
-                                                             // getMapper().convertValue(src, Object.class)
+        long start = begin();
+        try {
+            T result = (T) getMapper().convertValue(src, destClass); // getMapper().writeValueAsString(src)
+                                                                     // getMapper().convertValue(src, Object.class)
+            end(start, Operation.CONVERT, destClass, null, null);
+            return result;
+        } catch (IllegalArgumentException e) {
+            // convertValue wraps the processing errors.
+            if (start != NOT_TIMED) {
+                instrumentation.onError(getName(), Operation.CONVERT, destClass, System.nanoTime() - start,
+                        e.getCause() != null ? e.getCause() : e);
+            }
+            throw e;
+        }
+    }
+
+    private long begin() {
+        return instrumentation.isEnabled() ? System.nanoTime() : NOT_TIMED;
+    }
+
+    private void end(long start, Operation operation, Class<?> type, Object src, Object result) {
+        if (start != NOT_TIMED) {
+            instrumentation.onSuccess(getName(), operation, type, System.nanoTime() - start, sizeOf(src),
+                    sizeOf(result));
+        }
+    }
+
+    private void end(long start, Operation operation, Class<?> type, long sizeIn, Object result) {
+        if (start != NOT_TIMED) {
+            instrumentation.onSuccess(getName(), operation, type, System.nanoTime() - start, sizeIn, sizeOf(result));
+        }
+    }
+
+    private static Class<?> typeOf(Object src) {
+        return src == null ? null : src.getClass();
+    }
+
+    /**
+     * Only the sizes known without extra work, i.e. no UTF-8 length computation or file system access.
+     */
+    private static long sizeOf(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        return MapperInstrumentation.UNKNOWN_SIZE;
+    }
+
+    /**
+     * Same as {@link #reThrow(Exception)} but first reports the error to the instrumentation.
+     */
+    protected Object reThrow(Exception e, long start, Operation operation, Class<?> type) {
+        if (start != NOT_TIMED) {
+            instrumentation.onError(getName(), operation, type, System.nanoTime() - start, e);
+        }
+        return reThrow(e);
     }
 
     /**
@@ -140,13 +1370,13 @@ public abstract class JacksonMapper<M extends Model> extends BaseMapper<M> {
             if (jpe.getLocation() != null) {
                 mes.append("********** JSON ERROR ON LINE: " + jpe.getLocation().getLineNr() + " **********. ");
                 Object source = jpe.getLocation().getSourceRef();
-                if (source instanceof FileInputStream) {
+                if (source instanceof MappedFileInputStream) {
+                    mes.append("In file " + ((MappedFileInputStream) source).getPath() + ". ");
+                } else if (source instanceof FileInputStream && FILE_INPUT_STREAM_PATH != null) {
                     try {
-                        Field path = FileInputStream.class.getDeclaredField("path");
-                        path.setAccessible(true);
-                        mes.append("In file " + (String) path.get(source));
-                    } catch (Exception e1) {
-                        e1.printStackTrace();
+                        mes.append("In file " + (String) FILE_INPUT_STREAM_PATH.get(source) + ". ");
+                    } catch (IllegalAccessException e1) {
+                        // Only a diagnostic.
                     }
                 }
             }
@@ -155,4 +1385,38 @@ public abstract class JacksonMapper<M extends Model> extends BaseMapper<M> {
         }
         throw new RuntimeException(e);
     }
+
+    private static Field fileInputStreamPath() {
+        try {
+            Field path = FileInputStream.class.getDeclaredField("path");
+            path.setAccessible(true);
+            return path;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final class CodecKey {
+        private final Class<?> type;
+        private final Class<?> view;
+
+        CodecKey(Class<?> type, Class<?> view) {
+            this.type = type;
+            this.view = view;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (type == null ? 0 : type.hashCode()) + (view == null ? 0 : view.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CodecKey)) {
+                return false;
+            }
+            CodecKey other = (CodecKey) obj;
+            return type == other.type && view == other.view;
+        }
+    }
 }
\ No newline at end of file
@@ -14,7 +14,13 @@
  */
 package com.tugmodel.mapper.jackson;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
@@ -23,6 +29,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.tugmodel.client.mapper.Mapper;
 import com.tugmodel.client.model.Model;
+import com.tugmodel.client.model.meta.Meta;
 
 /**
  * 
@@ -30,143 +37,276 @@ import com.tugmodel.client.model.Model;
  */
 public class JacksonMappers {
 
-    private static ObjectMapper prettyPrintObjectMapper;
-
-    private static ObjectMapper getPrettyPrintObjectMapper() {
-        if (prettyPrintObjectMapper == null) {
-            ObjectMapper mapper = new ObjectMapper();
-            // TODO: All these should come from config-defaults.json.
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL); // Don't include nulls.
-            mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-            mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true);
-            mapper.configure(MapperFeature.AUTO_DETECT_IS_GETTERS, false);
-            mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-            mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            mapper.registerModule(new SimpleModule("ConfigMixins") {
-                @Override
-                public void setupModule(SetupContext context) {
-                    /**
-                     * Mixin on Object adds "@c" also on arrays and maps which is ugly. On the other hand it creates
-                     * the @c for the generic childs contained in model. The alternative solution would be
-                     * adding @JsonSubTypes in at the Model level mixin or better add a mixin for each Model subclass.
-                     * For the moment let's leave it as it is.
-                     */
-                    // On the other hand helps in providing type information in children contained in model.
-                    // context.setMixInAnnotations(Object.class, MixinsGenerator.BootstrapMixinObject.class);
-                    context.setMixInAnnotations(Model.class, MixinsGenerator.WithClassAnnotationsModelMixin.class);
-                }
-
-            });
-            prettyPrintObjectMapper = mapper;
-        }
-        return prettyPrintObjectMapper;
+    /**
+     * Lazy holder idiom: the class initialization guarantees that the ObjectMapper and the JacksonMapper are built
+     * only once, even if called concurrently, and only on first use.
+     */
+    private static class PrettyPrintHolder {
+        static final JacksonMapper<Model> MAPPER = newMapper("prettyPrint", createPrettyPrintObjectMapper());
+    }
 
+    /**
+     * Settings shared by all the mappers, whatever the wire format.
+     */
+    private static ObjectMapper newObjectMapper(JacksonFormat format) {
+        ObjectMapper mapper = new ObjectMapper(format.createFactory());
+        // TODO: All these should come from config-defaults.json.
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL); // Don't include nulls.
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true);
+        mapper.configure(MapperFeature.AUTO_DETECT_IS_GETTERS, false);
+        return mapper;
     }
-    // Used for pretty printing.
-    public static JacksonMapper getPrettyPrintMapper() {
+
+    // The shared mappers are frozen, see JacksonMapper#freeze().
+    private static JacksonMapper<Model> newMapper(String name, ObjectMapper objectMapper) {
+        JacksonMapper<Model> mapper = newConfigurableMapper(name, objectMapper);
+        mapper.freeze();
+        return mapper;
+    }
+
+    private static JacksonMapper<Model> newConfigurableMapper(final String name, final ObjectMapper objectMapper) {
         return new JacksonMapper<Model>() {
             public ObjectMapper initMapper() {
-                return getPrettyPrintObjectMapper();
+                return objectMapper;
+            }
+
+            @Override
+            public String getName() {
+                return name;
             }
         };
+    }
 
+    // e.g. "typed" or "typed-SMILE".
+    private static String name(String flavour, JacksonFormat format) {
+        return format == JacksonFormat.JSON ? flavour : flavour + "-" + format.name();
     }
 
-    private static ObjectMapper configReaderObjectMapper;
-
-    private static ObjectMapper getConfigReaderObjectMapper() {
-        if (configReaderObjectMapper == null) {
-            ObjectMapper mapper = new ObjectMapper();
-
-            // TODO: All these should come from config-defaults.json.
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL); // Don't include nulls.
-            mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-            mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true);
-            mapper.configure(MapperFeature.AUTO_DETECT_IS_GETTERS, false);
-            mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-            mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            // mapper.configure(JsonParser.Feature.ALLOW_MISSING_VALUES, true); // Allows trailing comma
-            // mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL); // Will add type information.
-            mapper.registerModule(new SimpleModule("ConfigMixins") {
-                @Override
-                public void setupModule(SetupContext context) {
-                    // Should I allow custom types inside Config?. If yes then use "@c" aware mixin and also
-                    // add "@c" to ALL elements within json file which makes the JSON heavy.
-                    // context.setMixInAnnotations(Model.class,
-                    // MixinsGenerator.WithClassAnnotationsModelMixin.class);
-                    // A BETTER solution would be to not use annotation "@c" at Model class level and use
-                    // instead the meta and put "@c" only for the types that can have childs.
-                    // Also this implies a 2 step solution. First read the json without mixins to get meta and
-                    // then use another one based on meta.
-
-                    // context.setMixInAnnotations(Model.class,
-                    // MixinsGenerator.WithClassAnnotationsModelMixinDefaultImpl.class);
-                    context.setMixInAnnotations(Model.class, MixinsGenerator.NoTypeInfoModelMixin.class);
-
-                }
-            });
-
-            configReaderObjectMapper = mapper;
-        }
-        return configReaderObjectMapper;
+    private static ObjectMapper createPrettyPrintObjectMapper() {
+        ObjectMapper mapper = newObjectMapper(JacksonFormat.JSON);
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        mapper.registerModule(new SimpleModule("ConfigMixins") {
+            @Override
+            public void setupModule(SetupContext context) {
+                /**
+                 * Mixin on Object adds "@c" also on arrays and maps which is ugly. On the other hand it creates
+                 * the @c for the generic childs contained in model. The alternative solution would be
+                 * adding @JsonSubTypes in at the Model level mixin or better add a mixin for each Model subclass.
+                 * For the moment let's leave it as it is.
+                 */
+                // On the other hand helps in providing type information in children contained in model.
+                // context.setMixInAnnotations(Object.class, MixinsGenerator.BootstrapMixinObject.class);
+                context.setMixInAnnotations(Model.class, MixinsGenerator.WithClassAnnotationsModelMixin.class);
+            }
+
+        });
+        return mapper;
+    }
+
+    // Used for pretty printing.
+    public static JacksonMapper getPrettyPrintMapper() {
+        return PrettyPrintHolder.MAPPER;
+    }
 
+    private static class ConfigReaderHolder {
+        static final JacksonMapper<Model> MAPPER = newMapper("configReader",
+                createConfigReaderObjectMapper(JacksonFormat.JSON));
+    }
+
+    // Binary variants, built once per format.
+    private static final ConcurrentMap<JacksonFormat, JacksonMapper<Model>> configReaderMappers =
+            new ConcurrentHashMap<JacksonFormat, JacksonMapper<Model>>();
+    private static final ConcurrentMap<JacksonFormat, JacksonMapper<Model>> typedMappers =
+            new ConcurrentHashMap<JacksonFormat, JacksonMapper<Model>>();
+
+    private static ObjectMapper createConfigReaderObjectMapper(JacksonFormat format) {
+        ObjectMapper mapper = newObjectMapper(format);
+
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        // mapper.configure(JsonParser.Feature.ALLOW_MISSING_VALUES, true); // Allows trailing comma
+        // mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL); // Will add type information.
+        mapper.registerModule(new SimpleModule("ConfigMixins") {
+            @Override
+            public void setupModule(SetupContext context) {
+                // Should I allow custom types inside Config?. If yes then use "@c" aware mixin and also
+                // add "@c" to ALL elements within json file which makes the JSON heavy.
+                // context.setMixInAnnotations(Model.class,
+                // MixinsGenerator.WithClassAnnotationsModelMixin.class);
+                // A BETTER solution would be to not use annotation "@c" at Model class level and use
+                // instead the meta and put "@c" only for the types that can have childs.
+                // Also this implies a 2 step solution. First read the json without mixins to get meta and
+                // then use another one based on meta.
+
+                // context.setMixInAnnotations(Model.class,
+                // MixinsGenerator.WithClassAnnotationsModelMixinDefaultImpl.class);
+                context.setMixInAnnotations(Model.class, MixinsGenerator.NoTypeInfoModelMixin.class);
+
+            }
+        });
+
+        return mapper;
     }
 
     // Does basic json config reading, no metadata involved.
     public static Mapper getConfigReaderMapper() {      
-        return new JacksonMapper<Model>() {
-            public ObjectMapper initMapper() {
-                return getConfigReaderObjectMapper();
-            }
-        };
+        return ConfigReaderHolder.MAPPER;
     }
-    
-    private static ObjectMapper typedObjectMapper;
-
-    private static ObjectMapper getTypedObjectMapper() {
-        if (typedObjectMapper == null) {
-            ObjectMapper mapper = new ObjectMapper();
-
-            // TODO: All these should come from config-defaults.json.
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL); // Don't include nulls.
-            mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-            mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true);
-            mapper.configure(MapperFeature.AUTO_DETECT_IS_GETTERS, false);
-            // mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-            // mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL); // Will add type information.
-            mapper.registerModule(new SimpleModule("ConfigMixins") {
-                @Override
-                public void setupModule(SetupContext context) {
-                    // The alternative to inline "@c" would be default typing at mapper level but that is ugly.
-                    // To prevent security holes the user entered content needs to forbid "@c".
-                    // Object mixin has same effect as "enableDefaultTyping(DefaultTyping.NON_FINAL);"
-                    // with the exception that everything else except collections and maps have the $c added
-                    // inline as a property and not as a element in a new array like for .
-
-                    // Because of bug https://github.com/FasterXML/jackson-databind/issues/901 :
-                    // Disable mapper level typing and instead use these in 2.8.6:
-                    // context.setMixInAnnotations(Object.class, MixinsGenerator.BootstrapMixinObject.class);
-                    // context.setMixInAnnotations(Model.class, MixinsGenerator.NoClassAnnotationsModelMixin.class);
-
-                    context.setMixInAnnotations(Model.class, MixinsGenerator.TypedMapper.class);
-
-                }
-
-            });
-            typedObjectMapper = mapper;
+
+    /**
+     * Same settings and mixins as {@link #getConfigReaderMapper()} but using the given wire format.
+     */
+    public static JacksonMapper<Model> getConfigReaderMapper(JacksonFormat format) {
+        if (format == JacksonFormat.JSON) {
+            return ConfigReaderHolder.MAPPER;
         }
-        return typedObjectMapper;
+        return configReaderMappers.computeIfAbsent(format, f -> newMapper(name("configReader", f),
+                createConfigReaderObjectMapper(f)));
+    }
+    
+    private static class TypedHolder {
+        static final JacksonMapper<Model> MAPPER = newMapper("typed", createTypedObjectMapper(JacksonFormat.JSON));
+    }
 
+    private static ObjectMapper createTypedObjectMapper(JacksonFormat format) {
+        ObjectMapper mapper = newObjectMapper(format);
+        mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL); // Will add type information.
+        return configureTypedObjectMapper(mapper);
+    }
+
+    private static ObjectMapper configureTypedObjectMapper(ObjectMapper mapper) {
+        // mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        // mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        mapper.registerModule(new SimpleModule("ConfigMixins") {
+            @Override
+            public void setupModule(SetupContext context) {
+                // The alternative to inline "@c" would be default typing at mapper level but that is ugly.
+                // To prevent security holes the user entered content needs to forbid "@c".
+                // Object mixin has same effect as "enableDefaultTyping(DefaultTyping.NON_FINAL);"
+                // with the exception that everything else except collections and maps have the $c added
+                // inline as a property and not as a element in a new array like for .
+
+                // Because of bug https://github.com/FasterXML/jackson-databind/issues/901 :
+                // Disable mapper level typing and instead use these in 2.8.6:
+                // context.setMixInAnnotations(Object.class, MixinsGenerator.BootstrapMixinObject.class);
+                // context.setMixInAnnotations(Model.class, MixinsGenerator.NoClassAnnotationsModelMixin.class);
+
+                context.setMixInAnnotations(Model.class, MixinsGenerator.TypedMapper.class);
+
+            }
+
+        });
+        return mapper;
     }
 
     // Does basic json config reading, no metadata involved.
     public static Mapper getTypedMapper() {
-        return new JacksonMapper<Model>() {
-            public ObjectMapper initMapper() {
-                return getTypedObjectMapper();
+        return TypedHolder.MAPPER;
+    }
+
+    /**
+     * Same settings and mixins as {@link #getTypedMapper()} but using the given wire format. Useful for node to node
+     * transfer where binary formats with shared name back-references give smaller payloads and faster parsing.
+     */
+    public static JacksonMapper<Model> getTypedMapper(JacksonFormat format) {
+        if (format == JacksonFormat.JSON) {
+            return TypedHolder.MAPPER;
+        }
+        return typedMappers.computeIfAbsent(format, f -> newMapper(name("typed", f), createTypedObjectMapper(f)));
+    }
+
+    private static class TypeIdsHolder {
+        static final MetaTypeIdResolver RESOLVER = newTypeIdResolver();
+
+        private static MetaTypeIdResolver newTypeIdResolver() {
+            MetaTypeIdResolver resolver = new MetaTypeIdResolver();
+            resolver.registerAll(Meta.s.fetchAll());
+            return resolver;
+        }
+    }
+
+    private static class CompactTypedHolder {
+        static final JacksonMapper<Model> MAPPER = newCompactTypedMapper(JacksonFormat.JSON);
+    }
+
+    private static final ConcurrentMap<JacksonFormat, JacksonMapper<Model>> compactTypedMappers =
+            new ConcurrentHashMap<JacksonFormat, JacksonMapper<Model>>();
+
+    private static ObjectMapper createCompactTypedObjectMapper(JacksonFormat format) {
+        ObjectMapper mapper = newObjectMapper(format);
+        // Same type information as the typed mapper but with the meta ids instead of the class names.
+        mapper.setDefaultTyping(new ObjectMapper.DefaultTypeResolverBuilder(ObjectMapper.DefaultTyping.NON_FINAL)
+                .init(JsonTypeInfo.Id.CUSTOM, TypeIdsHolder.RESOLVER).inclusion(JsonTypeInfo.As.WRAPPER_ARRAY));
+        return configureTypedObjectMapper(mapper);
+    }
+
+    private static JacksonMapper<Model> newCompactTypedMapper(JacksonFormat format) {
+        String name = format == JacksonFormat.JSON ? "compactTyped" : name("compactTyped", format);
+        JacksonMapper<Model> mapper = newMapper(name, createCompactTypedObjectMapper(format));
+        // The resolved ids stay in the deserializers, so an evicted id needs a fresh mapper to be rejected.
+        TypeIdsHolder.RESOLVER.addChangeListener(mapper::refreshMapper);
+        return mapper;
+    }
+
+    /**
+     * Same as {@link #getTypedMapper()} but the type ids are the meta ids(and short aliases for the JDK collections)
+     * instead of the fully qualified class names, see {@link MetaTypeIdResolver}. Only the registered types are
+     * accepted when reading, so this is also the flavour to use for content coming from outside.
+     */
+    public static JacksonMapper<Model> getCompactTypedMapper() {
+        return CompactTypedHolder.MAPPER;
+    }
+
+    public static JacksonMapper<Model> getCompactTypedMapper(JacksonFormat format) {
+        if (format == JacksonFormat.JSON) {
+            return CompactTypedHolder.MAPPER;
+        }
+        return compactTypedMappers.computeIfAbsent(format, JacksonMappers::newCompactTypedMapper);
+    }
+
+    /**
+     * The type ids of the compact typed mappers. {@link JacksonMapper#registerMeta} and {@link JacksonMapper#evictMeta}
+     * of these mappers update it, metas added at runtime without them need to be registered here too.
+     */
+    public static MetaTypeIdResolver getMetaTypeIds() {
+        return TypeIdsHolder.RESOLVER;
+    }
+
+    /**
+     * A mapper of its own with the same settings as the given(usually shared) one, for the users needing to configure
+     * it(instrumentation, serialized form cache, compact storage, other ObjectMapper) without affecting the others.
+     * The ObjectMapper is copied so the caches of the given mapper are not shared. Meant to be made once and kept
+     * since a copy sharing the type ids of the compact typed mappers stays registered for their changes.
+     */
+    public static JacksonMapper<Model> configurableCopy(JacksonMapper<Model> mapper) {
+        JacksonMapper<Model> result = newConfigurableMapper(mapper.getName(), mapper.getMapper().copy());
+        MetaTypeIdResolver typeIds = result.getMetaTypeIds();
+        if (typeIds != null) {
+            typeIds.addChangeListener(result::refreshMapper);
+        }
+        return result;
+    }
+
+    /**
+     * Pre-resolves the serializers and deserializers of all the Meta model classes in all the mappers so that the
+     * first real request does not pay for the introspection and mixin resolution. Usually called once at startup,
+     * after the metas are loaded.
+     */
+    public static void warmUp() {
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        classes.add(Model.class);
+        for (Meta meta : Meta.s.fetchAll()) {
+            Class<?> modelClass = meta.modelClass();
+            if (modelClass != null && !classes.contains(modelClass)) {
+                classes.add(modelClass);
             }
-        };
+        }
+        PrettyPrintHolder.MAPPER.warmUp(classes);
+        ConfigReaderHolder.MAPPER.warmUp(classes);
+        TypedHolder.MAPPER.warmUp(classes);
+        CompactTypedHolder.MAPPER.warmUp(classes);
     }
 
 }
\ No newline at end of file
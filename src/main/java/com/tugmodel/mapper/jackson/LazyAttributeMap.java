@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Attributes map of a lazily deserialized model, see {@link JacksonMapper#deserializeLazy(Object)}. Nested objects
+ * and arrays are kept unparsed and are deserialized the first time they are read through get() or the entry set.
+ * 
+ * For JSON text sources the unparsed values are ranges of the source, otherwise (binary formats, streams) the tokens
+ * copied in a TokenBuffer. The {@link ModelSerializer} writes the untouched values back as they were read.
+ * 
+ * NOTE: like the model itself this is not thread safe, reading an attribute may modify the map.
+ */
+class LazyAttributeMap extends AbstractMap<String, Object> {
+    /**
+     * Reader attribute holding the ObjectReader(for Object.class) used to deserialize the values when first used. Its
+     * presence is what turns on the lazy mode in {@link ModelDeserializer}.
+     */
+    static final String READER_ATTRIBUTE = LazyAttributeMap.class.getName();
+    /**
+     * Reader attribute holding the index in the source byte[] where the parsing started, if not 0. The parser reports
+     * the byte offsets relative to it.
+     */
+    static final String OFFSET_ATTRIBUTE = LazyAttributeMap.class.getName() + ".offset";
+
+    private final LinkedHashMap<String, Object> values;
+
+    LazyAttributeMap(Map<String, Object> values) {
+        this.values = new LinkedHashMap<String, Object>(values);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = values.get(key);
+        if (value instanceof Deferred) {
+            value = ((Deferred) value).materialize();
+            values.put((String) key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object old = values.put(key, value);
+        // An unparsed previous value is not deserialized just to be returned.
+        return old instanceof Deferred ? null : old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object old = values.remove(key);
+        return old instanceof Deferred ? null : old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * The entries without deserializing anything. The unparsed values are {@link Deferred} instances.
+     */
+    Set<Map.Entry<String, Object>> rawEntrySet() {
+        return values.entrySet();
+    }
+
+    /**
+     * The value without deserializing it, a {@link Deferred} if not yet read.
+     */
+    Object getRaw(String key) {
+        return values.get(key);
+    }
+
+    boolean isLoaded(String key) {
+        return !(values.get(key) instanceof Deferred);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                final Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        Map.Entry<String, Object> entry = it.next();
+                        if (entry.getValue() instanceof Deferred) {
+                            // Not a structural modification so the iteration goes on.
+                            entry.setValue(((Deferred) entry.getValue()).materialize());
+                        }
+                        return entry;
+                    }
+
+                    public void remove() {
+                        it.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.size();
+            }
+        };
+    }
+
+    /**
+     * An attribute value not yet deserialized. Written back as is when serialized.
+     */
+    abstract static class Deferred implements JsonSerializable {
+        protected final ObjectReader reader;
+
+        Deferred(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        protected abstract JsonParser parser() throws IOException;
+
+        /**
+         * Index in the source byte[] where {@link #parser()} starts, 0 if it does not parse a byte[].
+         */
+        protected int parserOffset() {
+            return 0;
+        }
+
+        Object materialize() {
+            try (JsonParser p = parser()) {
+                // Same attribute so that the nested models are lazy too.
+                return reader.withAttribute(READER_ATTRIBUTE, reader).withAttribute(OFFSET_ATTRIBUTE, parserOffset())
+                        .readValue(p);
+            } catch (IOException e) {
+                throw new RuntimeException("Can not deserialize lazy attribute " + this, e);
+            }
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            // The type information, if any, is part of what was read.
+            serialize(gen, serializers);
+        }
+
+        /**
+         * Streams the tokens to the generator without building the value.
+         */
+        protected void copyTo(JsonGenerator gen) throws IOException {
+            try (JsonParser p = parser()) {
+                p.nextToken();
+                gen.copyCurrentStructure(p);
+            }
+        }
+    }
+
+    /**
+     * A range of a JSON text source, either bytes(UTF-8) or chars.
+     */
+    static final class RawJson extends Deferred {
+        private final Object source;
+        private final int offset;
+        private final int length;
+
+        RawJson(ObjectReader reader, Object source, int offset, int length) {
+            super(reader);
+            this.source = source;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        protected JsonParser parser() throws IOException {
+            if (source instanceof byte[]) {
+                return reader.getFactory().createParser((byte[]) source, offset, length);
+            }
+            return reader.getFactory().createParser(((String) source).substring(offset, offset + length));
+        }
+
+        @Override
+        protected int parserOffset() {
+            return source instanceof byte[] ? offset : 0;
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            // Raw copy only when the output is JSON text laid out the same way.
+            if (gen instanceof JsonGeneratorImpl && gen.getPrettyPrinter() == null) {
+                gen.writeRawValue(text());
+            } else {
+                copyTo(gen);
+            }
+        }
+
+        private String text() {
+            if (source instanceof byte[]) {
+                return new String((byte[]) source, offset, length, StandardCharsets.UTF_8);
+            }
+            return ((String) source).substring(offset, offset + length);
+        }
+
+        @Override
+        public String toString() {
+            return "<unparsed " + length + (source instanceof byte[] ? " bytes>" : " chars>");
+        }
+    }
+
+    /**
+     * The tokens of a value read from a source that can not be sliced.
+     */
+    static final class Buffered extends Deferred {
+        private final TokenBuffer buffer;
+
+        Buffered(ObjectReader reader, TokenBuffer buffer) {
+            super(reader);
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected JsonParser parser() {
+            return buffer.asParser(reader);
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            buffer.serialize(gen);
+        }
+
+        @Override
+        public String toString() {
+            return "<unparsed tokens>";
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+/**
+ * Stream over a memory mapped file region. Remembers the file so that {@link JacksonMapper#reThrow(Exception)} can
+ * tell where a parse error is.
+ */
+public class MappedFileInputStream extends ByteBufferBackedInputStream {
+    private final Path path;
+
+    public MappedFileInputStream(Path path, ByteBuffer buffer) {
+        super(buffer);
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+/**
+ * Hook called around the serialize/deserialize/updateModel/convert/extract operations of a {@link JacksonMapper}, e.g.
+ * to feed metrics or tracing. Implementations must be thread safe and fast since they run on every call.
+ * 
+ * When {@link #isEnabled()} is false the mapper does not even read the clock, so the default {@link #NOOP} costs
+ * a volatile read per operation.
+ */
+public interface MapperInstrumentation {
+
+    enum Operation {
+        SERIALIZE, DESERIALIZE, UPDATE_MODEL, CONVERT, EXTRACT
+    }
+
+    /** Size reported when the number of bytes/chars is not known without extra work(streams, files, objects). */
+    long UNKNOWN_SIZE = -1;
+
+    MapperInstrumentation NOOP = new MapperInstrumentation() {
+        public boolean isEnabled() {
+            return false;
+        }
+
+        public void onSuccess(String mapper, Operation operation, Class<?> type, long nanos, long sizeIn,
+                long sizeOut) {
+        }
+
+        public void onError(String mapper, Operation operation, Class<?> type, long nanos, Throwable cause) {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * @param mapper The mapper flavour, see {@link JacksonMapper#getName()}.
+     * @param type The model class or the requested class. May be null when not yet known.
+     * @param sizeIn Size of the source: bytes for binary sources, chars for text ones, or {@link #UNKNOWN_SIZE}.
+     * @param sizeOut Size of the result, same units as sizeIn.
+     */
+    void onSuccess(String mapper, Operation operation, Class<?> type, long nanos, long sizeIn, long sizeOut);
+
+    /**
+     * Called before the error is rethrown by {@link JacksonMapper#reThrow(Exception)}.
+     */
+    void onError(String mapper, Operation operation, Class<?> type, long nanos, Throwable cause);
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+/**
+ * Outcome of mapping one element of a batch, see {@link JacksonMapper#deserializeAll(java.util.List)}. Holds either
+ * the value or the error of that element so that one bad document does not abort the rest of the batch.
+ */
+public final class MappingResult<T> {
+    private final int index;
+    private final T value;
+    private final RuntimeException error;
+
+    private MappingResult(int index, T value, RuntimeException error) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> MappingResult<T> success(int index, T value) {
+        return new MappingResult<T>(index, value, null);
+    }
+
+    public static <T> MappingResult<T> failure(int index, RuntimeException error) {
+        return new MappingResult<T>(index, null, error);
+    }
+
+    /**
+     * Position of the element in the batch.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * The mapped value.
+     * 
+     * @throws RuntimeException The error of the element if it failed.
+     */
+    public T getValue() {
+        if (error != null) {
+            throw error;
+        }
+        return value;
+    }
+
+    /**
+     * The error of the element, the same exception the single element method would have thrown. Null on success.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "MappingResult[" + index + "]=" + value
+                : "MappingResult[" + index + "] failed: " + error.getMessage();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * The changed attributes of a model as an RFC 7396 JSON merge patch: a null removes the attribute, a nested patch(JSON
+ * object) is applied to the nested model or map and any other value replaces the attribute. Built with
+ * {@link JacksonMapper#diff(ModelSnapshot, com.tugmodel.client.model.Model)} and applied with
+ * {@link JacksonMapper#updateModel(Object, com.tugmodel.client.model.Model, JacksonMapper.MergeMode)} in PATCH mode.
+ * 
+ * The patch itself is always written as a plain object. The replaced values are written like the attribute values of
+ * a model, i.e. with the type information of the mapper flavour if any.
+ * 
+ * NOTE: as in RFC 7396 an attribute can not be set to null(it is removed instead) and arrays are replaced as a whole.
+ * A nested model or map is always patched, never replaced, so a change of its class(or between a model and a map) is
+ * not carried over, only its attributes.
+ */
+@JsonDeserialize(using = MergePatch.Deserializer.class)
+public final class MergePatch implements JsonSerializable {
+    private final Map<String, Object> entries = new LinkedHashMap<String, Object>();
+
+    MergePatch() {
+    }
+
+    /**
+     * The patch turning the before attributes into the after ones.
+     */
+    static MergePatch diff(Map<String, Object> before, Map<String, Object> after) {
+        MergePatch patch = new MergePatch();
+        for (Map.Entry<String, Object> entry : before.entrySet()) {
+            if (entry.getValue() != null && after.get(entry.getKey()) == null) {
+                patch.entries.put(entry.getKey(), null);
+            }
+        }
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                // Removed above if it was set, a null can not be added.
+                continue;
+            }
+            Object old = before.get(entry.getKey());
+            Map<String, Object> oldAttributes = ModelSnapshot.attributes(old);
+            Map<String, Object> newAttributes = ModelSnapshot.attributes(value);
+            if (oldAttributes != null && newAttributes != null) {
+                // Also when the class changed: a replacing object would be read back as a patch and merged with
+                // the attributes the other side has, explicit nulls remove them as in RFC 7396.
+                MergePatch nested = diff(oldAttributes, newAttributes);
+                if (!nested.isEmpty()) {
+                    patch.entries.put(entry.getKey(), nested);
+                }
+            } else if (!ModelSnapshot.deepEquals(old, value)) {
+                patch.entries.put(entry.getKey(), value);
+            }
+        }
+        return patch;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    Set<Map.Entry<String, Object>> entries() {
+        return entries.entrySet();
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        write(gen, serializers, serializers.findTypeSerializer(serializers.constructType(Object.class)));
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        // A merge patch is a plain JSON object, whatever the flavour.
+        serialize(gen, serializers);
+    }
+
+    private void write(JsonGenerator gen, SerializerProvider serializers, TypeSerializer valueTypeSerializer)
+            throws IOException {
+        gen.writeStartObject();
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            Object value = entry.getValue();
+            gen.writeFieldName(entry.getKey());
+            if (value == null) {
+                gen.writeNull();
+            } else if (value instanceof MergePatch) {
+                ((MergePatch) value).write(gen, serializers, valueTypeSerializer);
+            } else {
+                JsonSerializer<Object> ser = serializers.findValueSerializer(value.getClass(), null);
+                if (valueTypeSerializer != null) {
+                    ser.serializeWithType(value, gen, serializers, valueTypeSerializer);
+                } else {
+                    ser.serialize(value, gen, serializers);
+                }
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        return "MergePatch" + entries;
+    }
+
+    /**
+     * Reads the JSON objects as nested patches and the other values like the attribute values of a model.
+     */
+    static final class Deserializer extends StdDeserializer<MergePatch> {
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(MergePatch.class);
+        }
+
+        @Override
+        public MergePatch deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw JsonMappingException.from(p, "Expected a JSON object for a merge patch but got "
+                        + p.getCurrentToken());
+            }
+            // Includes the type deserializer of the mapper flavour, if any.
+            JsonDeserializer<Object> values = ctxt.findRootValueDeserializer(ctxt.constructType(Object.class));
+            return read(p, ctxt, values);
+        }
+
+        private static MergePatch read(JsonParser p, DeserializationContext ctxt, JsonDeserializer<Object> values)
+                throws IOException {
+            MergePatch patch = new MergePatch();
+            JsonToken t = p.nextToken();
+            for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                String name = p.getCurrentName();
+                t = p.nextToken();
+                if (t == JsonToken.VALUE_NULL) {
+                    patch.entries.put(name, null);
+                } else if (t == JsonToken.START_OBJECT) {
+                    patch.entries.put(name, read(p, ctxt, values));
+                } else {
+                    patch.entries.put(name, values.deserialize(p, ctxt));
+                }
+            }
+            if (t != JsonToken.END_OBJECT) {
+                throw JsonMappingException.from(p, "Expected " + JsonToken.END_OBJECT + " in merge patch but got " + t);
+            }
+            return patch;
+        }
+    }
+}
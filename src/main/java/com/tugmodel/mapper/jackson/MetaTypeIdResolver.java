@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.jsontype.impl.TypeIdResolverBase;
+import com.tugmodel.client.model.Model;
+import com.tugmodel.client.model.meta.Meta;
+
+/**
+ * Type ids from a lookup table instead of fully qualified class names: the model classes are identified by their meta
+ * id, the few JDK types default typing writes by short aliases("list", "map", "date", ...). The ids are much shorter
+ * and reading them is a map lookup instead of a class loading.
+ * 
+ * The table is also an allow-list: only the registered classes can be instantiated from a payload, unlike the class
+ * name ids of default typing which let the content pick any class of the classpath. A value of a class that is not
+ * registered is written with the id of its nearest registered superclass(e.g. java.sql.Timestamp as "date"), the
+ * collections and maps with the alias of their interface, anything else with its class name which is then rejected
+ * when read back unless registered under that name.
+ * 
+ * Jackson keeps the deserializer of every id it resolved, so an evicted or remapped id would still be accepted by the
+ * mappers already using the resolver. They are refreshed through the listeners, see {@link #addChangeListener}.
+ * 
+ * Use with {@link JsonTypeInfo.Id#CUSTOM}, see {@link JacksonMappers#getCompactTypedMapper()}.
+ */
+public class MetaTypeIdResolver extends TypeIdResolverBase {
+    public static final String LIST = "list";
+    public static final String SET = "set";
+    public static final String MAP = "map";
+
+    private static final Map<String, Class<?>> BUILT_IN = new LinkedHashMap<String, Class<?>>();
+
+    static {
+        BUILT_IN.put(LIST, ArrayList.class);
+        BUILT_IN.put(SET, LinkedHashSet.class);
+        BUILT_IN.put(MAP, LinkedHashMap.class);
+        BUILT_IN.put("hashMap", HashMap.class);
+        BUILT_IN.put("hashSet", HashSet.class);
+        BUILT_IN.put("date", Date.class);
+        // The scalars JSON has no natural type for.
+        BUILT_IN.put("long", Long.class);
+        BUILT_IN.put("float", Float.class);
+        BUILT_IN.put("short", Short.class);
+        BUILT_IN.put("byte", Byte.class);
+        BUILT_IN.put("uuid", UUID.class);
+        BUILT_IN.put("decimal", BigDecimal.class);
+        BUILT_IN.put("bigint", BigInteger.class);
+        BUILT_IN.put("array", Object[].class);
+        BUILT_IN.put("Model", Model.class);
+    }
+
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+    private final ConcurrentMap<Class<?>, String> ids = new ConcurrentHashMap<Class<?>, String>();
+    // Ids of the classes that are not registered, dropped on every change since the nearest registered type may change.
+    private final ConcurrentMap<Class<?>, String> derivedIds = new ConcurrentHashMap<Class<?>, String>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    public MetaTypeIdResolver() {
+        super(null, null);
+        for (Map.Entry<String, Class<?>> entry : BUILT_IN.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Allows the class under the given id. The first id registered for a class is the one written.
+     * 
+     * @throws IllegalArgumentException If the id is one of the built-in aliases of another class.
+     */
+    public void register(String id, Class<?> cls) {
+        Class<?> builtIn = BUILT_IN.get(id);
+        if (builtIn != null && builtIn != cls) {
+            throw new IllegalArgumentException("Type id '" + id + "' is reserved for " + builtIn.getName());
+        }
+        Class<?> previous = classes.put(id, cls);
+        if (previous != null && previous != cls) {
+            removeId(previous, id);
+        }
+        ids.putIfAbsent(cls, id);
+        derivedIds.clear();
+        if (previous != null && previous != cls) {
+            fireChanged();
+        }
+    }
+
+    /**
+     * Registers the model class of the meta under the meta id.
+     */
+    public void register(Meta meta) {
+        if (meta.modelClass() != null) {
+            register(meta.getId(), meta.modelClass());
+        }
+    }
+
+    public void registerAll(Collection<Meta> metas) {
+        if (metas != null) {
+            for (Meta meta : metas) {
+                register(meta);
+            }
+        }
+    }
+
+    /**
+     * Removes the meta id from the allow-list.
+     * 
+     * @throws IllegalArgumentException If the id is one of the built-in aliases.
+     */
+    public void evict(Meta meta) {
+        if (BUILT_IN.containsKey(meta.getId())) {
+            throw new IllegalArgumentException("Type id '" + meta.getId() + "' is built-in");
+        }
+        Class<?> cls = classes.remove(meta.getId());
+        if (cls != null) {
+            removeId(cls, meta.getId());
+            derivedIds.clear();
+            fireChanged();
+        }
+    }
+
+    private void removeId(Class<?> cls, String id) {
+        if (ids.remove(cls, id)) {
+            // Written with another id it is still registered under, if any.
+            for (Map.Entry<String, Class<?>> entry : classes.entrySet()) {
+                if (entry.getValue() == cls) {
+                    ids.putIfAbsent(cls, entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The listener is called after an id was evicted or mapped to another class. The mappers using the resolver must
+     * then drop their deserializers, e.g. with {@link JacksonMapper#refreshMapper()}.
+     */
+    public void addChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public JsonTypeInfo.Id getMechanism() {
+        return JsonTypeInfo.Id.CUSTOM;
+    }
+
+    @Override
+    public String idFromValue(Object value) {
+        return idFromClass(value.getClass());
+    }
+
+    @Override
+    public String idFromValueAndType(Object value, Class<?> suggestedType) {
+        return idFromClass(value == null ? suggestedType : value.getClass());
+    }
+
+    @Override
+    public String idFromBaseType() {
+        return null;
+    }
+
+    protected String idFromClass(Class<?> cls) {
+        String id = ids.get(cls);
+        if (id == null) {
+            id = derivedIds.get(cls);
+            if (id == null) {
+                id = deriveId(cls);
+                // Cached, e.g. for the Arrays.asList and unmodifiable wrappers.
+                derivedIds.putIfAbsent(cls, id);
+            }
+        }
+        return id;
+    }
+
+    private String deriveId(Class<?> cls) {
+        for (Class<?> superclass = cls.getSuperclass(); superclass != null && superclass != Object.class;
+                superclass = superclass.getSuperclass()) {
+            String id = ids.get(superclass);
+            if (id != null) {
+                return id;
+            }
+        }
+        if (List.class.isAssignableFrom(cls) || (Collection.class.isAssignableFrom(cls)
+                && !Set.class.isAssignableFrom(cls))) {
+            return LIST;
+        } else if (Set.class.isAssignableFrom(cls)) {
+            return SET;
+        } else if (Map.class.isAssignableFrom(cls)) {
+            return MAP;
+        }
+        return cls.getName();
+    }
+
+    /**
+     * @return Null for an id that is not registered, which Jackson reports as an unknown type id.
+     */
+    @Override
+    public JavaType typeFromId(DatabindContext context, String id) {
+        Class<?> cls = classes.get(id);
+        return cls == null ? null : context.getTypeFactory().constructType(cls);
+    }
+
+    @Override
+    public String getDescForKnownTypeIds() {
+        return classes.keySet().toString();
+    }
+}
@@ -14,10 +14,18 @@
  */
 package com.tugmodel.mapper.jackson;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
@@ -26,10 +34,12 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.tugmodel.client.model.Model;
 import com.tugmodel.client.model.meta.Meta;
 
+import javassist.ClassClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
@@ -122,21 +132,132 @@ public class MixinsGenerator extends SimpleModule {
         protected Map<String, Object> data = new LinkedHashMap<String, Object>();
     }
 
+    /** Bump when the generated bytecode changes so that the on-disk cache is not reused. */
+    private static final String GENERATOR_VERSION = "1";
+    private static final String MIXINS_PACKAGE = "com.tugmodel.client.mapper.";
+    /** Used when no cache directory is set explicitly. */
+    public static final String CACHE_DIRECTORY_PROPERTY = "tugmodel.mixins.cacheDir";
+
+    private final Map<String, Class<?>> mixins = new ConcurrentHashMap<String, Class<?>>();
+    private volatile File cacheDirectory;
+
     public MixinsGenerator(String id) {
         super(id);
+        String dir = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        if (dir != null) {
+            cacheDirectory = new File(dir);
+        }
+    }
+
+    /**
+     * Directory where the generated mixin bytecode is persisted so that warm restarts skip the code generation. Null
+     * disables the cache.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
     }
 
     protected void generateModelMixin(Meta meta, SetupContext context) {
-        String pkgName = "com.tugmodel.client.mapper.";
-        String mixinClassName = pkgName + getModuleName() + meta.getId();
+        context.setMixInAnnotations(meta.modelClass(), loadModelMixin(meta));
+    }
+
+    public String getMixinClassName(Meta meta) {
+        return MIXINS_PACKAGE + getModuleName() + meta.getId();
+    }
+
+    /**
+     * Returns the mixin class of the meta. In order:
+     * 1. The class is already on the classpath, generated at build time with {@link #main(String[])}.
+     * 2. The bytecode is in the cache directory from a previous run of the same generator version.
+     * 3. The bytecode is generated with javassist and stored in the cache directory if any.
+     */
+    protected Class<?> loadModelMixin(Meta meta) {
+        String mixinClassName = getMixinClassName(meta);
+        Class<?> mixinClass = mixins.get(mixinClassName);
+        if (mixinClass != null) {
+            return mixinClass;
+        }
         try {
-            Class.forName(mixinClassName);
-            System.out.println("Mixin " + mixinClassName + " already exists.");
-            return;
+            return Class.forName(mixinClassName, false, MixinsGenerator.class.getClassLoader());
         } catch (ClassNotFoundException e) {
-            // my class isn't there!
+            // Not generated at build time.
+        }
+        try {
+            byte[] bytecode = null;
+            File cached = null;
+            File directory = cacheDirectory;
+            if (directory != null) {
+                cached = new File(directory, cacheFileName(mixinClassName));
+                if (cached.isFile()) {
+                    bytecode = Files.readAllBytes(cached.toPath());
+                }
+            }
+            if (bytecode == null) {
+                bytecode = generateModelMixinBytecode(mixinClassName);
+                if (cached != null) {
+                    writeAtomically(cached, bytecode);
+                    deleteSuperseded(directory, mixinClassName);
+                }
+            }
+            synchronized (mixins) {
+                mixinClass = mixins.get(mixinClassName);
+                if (mixinClass == null) {
+                    // A loader per mixin so that a replaced or evicted mixin can be unloaded.
+                    mixinClass = new MixinClassLoader().define(mixinClassName, bytecode);
+                    mixins.put(mixinClassName, mixinClass);
+                }
+            }
+            return mixinClass;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Name of the cached bytecode. The bytecode depends only on the class name and the generator, not on the rest of
+     * the meta, so an edited meta reuses it.
+     */
+    static String cacheFileName(String mixinClassName) {
+        return mixinClassName + "-v" + GENERATOR_VERSION + ".class";
+    }
+
+    /**
+     * Deletes the files of the previous generator versions, and the ones keyed by a meta hash before that, so that the
+     * cache directory does not grow.
+     */
+    private static void deleteSuperseded(File directory, String mixinClassName) {
+        Pattern superseded = Pattern.compile(Pattern.quote(mixinClassName) + "-(v\\d+|[0-9a-f]{16})\\.class");
+        String current = cacheFileName(mixinClassName);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.equals(current) && superseded.matcher(name).matches()) {
+                // Best effort, another JVM may be using or deleting it.
+                file.delete();
+            }
         }
+    }
+
+    private static void writeAtomically(File file, byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        // Another JVM may write the same file concurrently so write to a temporary file and then move it.
+        Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        Files.write(tmp, bytes);
+        try {
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+        }
+    }
 
+    protected byte[] generateModelMixinBytecode(String mixinClassName) throws Exception {
         // https://jboss-javassist.github.io/javassist/tutorial/tutorial3.html
         // http://blog.javaforge.net/post/31913732423/howto-create-java-pojo-at-runtime-with-javassist
         // Tools like https://github.com/OpenHFT/Java-Runtime-Compiler use
@@ -144,7 +265,9 @@ public class MixinsGenerator extends SimpleModule {
         // http://stackoverflow.com/questions/26117147/how-can-i-compile-source-code-with-javassist
         // The alternative is using javassist but we will not have access to the
         // source code.
-        ClassPool pool = ClassPool.getDefault();
+        // A private pool, the default one keeps all the generated CtClass-es forever.
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new ClassClassPath(Model.class));
         CtClass cc = pool.makeClass(mixinClassName);
         // CtClass mixinClass = pool.get(pkgName + "ModelMixin"); // Means that
         // the class already exists.
@@ -197,45 +320,102 @@ public class MixinsGenerator extends SimpleModule {
         // @JsonTypeInfo(defaultImpl = MyModel.class, include = JsonTypeInfo.As.PROPERTY, use =
         // JsonTypeInfo.Id.MINIMAL_CLASS)
 
-        try {
-            // cc.addMethod(m);
-            String extraMethodDef = "public abstract java.util.Map extraFields();";
-            CtMethod extraMethod = CtNewMethod.make(extraMethodDef, cc); // CtMethod.make(extraMethodDef, cc);
-            cc.addMethod(extraMethod);
-            AnnotationsAttribute anyGetterAttribute = new AnnotationsAttribute(constPool,
-                    AnnotationsAttribute.visibleTag);
-            Annotation anyGetterAnnotation = new Annotation("com.fasterxml.jackson.annotation.JsonAnyGetter",
-                    constPool);
-            anyGetterAttribute.addAnnotation(anyGetterAnnotation);
-            extraMethod.getMethodInfo().addAttribute(anyGetterAttribute);
-
-            String anySetterMethodDef = "public abstract com.tugmodel.client.model.Model set(String name, Object value);";
-            CtMethod anySetterMethod = CtNewMethod.make(anySetterMethodDef, cc);
-            cc.addMethod(anySetterMethod);
-            AnnotationsAttribute anySetterAttribute = new AnnotationsAttribute(constPool,
-                    AnnotationsAttribute.visibleTag);
-            Annotation anySetterAnnotation = new Annotation("com.fasterxml.jackson.annotation.JsonAnySetter",
-                    constPool);
-            anySetterAttribute.addAnnotation(anySetterAnnotation);
-            anySetterMethod.getMethodInfo().addAttribute(anySetterAttribute);
-
-            // cc.writeFile(); // Write file to disc. It works.
-            Class mixinClass = cc.toClass();
-            context.setMixInAnnotations(meta.modelClass(), mixinClass);
+        // cc.addMethod(m);
+        String extraMethodDef = "public abstract java.util.Map extraFields();";
+        CtMethod extraMethod = CtNewMethod.make(extraMethodDef, cc); // CtMethod.make(extraMethodDef, cc);
+        cc.addMethod(extraMethod);
+        AnnotationsAttribute anyGetterAttribute = new AnnotationsAttribute(constPool,
+                AnnotationsAttribute.visibleTag);
+        Annotation anyGetterAnnotation = new Annotation("com.fasterxml.jackson.annotation.JsonAnyGetter",
+                constPool);
+        anyGetterAttribute.addAnnotation(anyGetterAnnotation);
+        extraMethod.getMethodInfo().addAttribute(anyGetterAttribute);
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        String anySetterMethodDef = "public abstract com.tugmodel.client.model.Model set(String name, Object value);";
+        CtMethod anySetterMethod = CtNewMethod.make(anySetterMethodDef, cc);
+        cc.addMethod(anySetterMethod);
+        AnnotationsAttribute anySetterAttribute = new AnnotationsAttribute(constPool,
+                AnnotationsAttribute.visibleTag);
+        Annotation anySetterAnnotation = new Annotation("com.fasterxml.jackson.annotation.JsonAnySetter",
+                constPool);
+        anySetterAttribute.addAnnotation(anySetterAnnotation);
+        anySetterMethod.getMethodInfo().addAttribute(anySetterAttribute);
 
+        // cc.writeFile(); // Write file to disc. It works.
+        byte[] bytecode = cc.toBytecode();
+        cc.detach();
+        return bytecode;
     }
 
     @Override
     public void setupModule(SetupContext context) {
 
         List<Meta> metas = Meta.s.fetchAll();
-        for (Meta meta : metas) {
-            generateModelMixin(meta, context);
+        // The generation is independent for each meta so it runs in parallel. The context is not thread safe so the
+        // registration is done afterwards.
+        List<Class<?>> mixinClasses = metas.parallelStream().map(this::loadModelMixin).collect(Collectors.toList());
+        for (int i = 0; i < metas.size(); i++) {
+            context.setMixInAnnotations(metas.get(i).modelClass(), mixinClasses.get(i));
+        }
+
+    }
+
+    /**
+     * Adds the mixin of a new meta to a mapper not yet in use since ObjectMapper.addMixIn is not thread safe and is
+     * ignored for the types Jackson already has a (de)serializer for. See
+     * {@link JacksonMapper#registerMeta(MixinsGenerator, Meta)} for a mapper already in use.
+     */
+    public Class<?> register(Meta meta, ObjectMapper mapper) {
+        Class<?> mixinClass = loadModelMixin(meta);
+        mapper.addMixIn(meta.modelClass(), mixinClass);
+        return mixinClass;
+    }
+
+    /**
+     * Regenerates the mixin of a changed meta. The previous mixin class is dropped so it can be unloaded.
+     */
+    public Class<?> replace(Meta meta, ObjectMapper mapper) {
+        mixins.remove(getMixinClassName(meta));
+        return register(meta, mapper);
+    }
+
+    public void evict(Meta meta, ObjectMapper mapper) {
+        mixins.remove(getMixinClassName(meta));
+        mapper.addMixIn(meta.modelClass(), null);
+    }
+
+    /**
+     * Build time generation of the mixins of all the metas as class files so that they are packaged in the jar and no
+     * code generation happens at runtime. Meant for the build of the application owning the metas, since they must be
+     * loadable from the classpath, e.g. with the exec-maven-plugin "java" goal in the process-classes phase:
+     * mainClass com.tugmodel.mapper.jackson.MixinsGenerator, arguments ${project.build.outputDirectory} and the module
+     * id used at runtime.
+     * 
+     * @param args The output directory(e.g. target/classes) and the module id used at runtime.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: MixinsGenerator <outputDirectory> <moduleId>");
+        }
+        File outputDirectory = new File(args[0]);
+        MixinsGenerator generator = new MixinsGenerator(args[1]);
+        for (Meta meta : Meta.s.fetchAll()) {
+            String mixinClassName = generator.getMixinClassName(meta);
+            File classFile = new File(outputDirectory, mixinClassName.replace('.', File.separatorChar) + ".class");
+            writeAtomically(classFile, generator.generateModelMixinBytecode(mixinClassName));
+        }
+    }
+
+    /**
+     * Defines the mixins from their bytecode. Its parent sees both the Jackson annotations and the Model classes.
+     */
+    static class MixinClassLoader extends ClassLoader {
+        MixinClassLoader() {
+            super(MixinsGenerator.class.getClassLoader());
         }
 
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * Direct access to the attributes map of a model, the same "data" field the TypedMapper mixin serializes. Avoids the
+ * copy made by extraFields().
+ */
+final class ModelAccess {
+    private static final Field DATA;
+
+    static {
+        try {
+            DATA = Model.class.getDeclaredField("data");
+            DATA.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ModelAccess() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> data(Model model) {
+        try {
+            return (Map<String, Object>) DATA.get(model);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void setData(Model model, Map<String, Object> data) {
+        try {
+            DATA.set(model, data);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Fills the attributes map of a model straight from the parser, without going through the reflective any setter call
+ * for each attribute. Attribute values are read like the any setter would read them(declared as Object, using the
+ * default typing of the mapper if any). Type information is handled by Jackson through {@link #deserializeWithType}.
+ * 
+ * When the {@link LazyAttributeMap#READER_ATTRIBUTE} reader attribute is set the nested objects and arrays are skipped
+ * and kept unparsed in a {@link LazyAttributeMap}. When the {@link ModelShapes#READER_ATTRIBUTE} reader attribute is
+ * set the attributes are kept in a {@link CompactAttributeMap} instead.
+ */
+public class ModelDeserializer extends StdDeserializer<Model> implements ContextualDeserializer {
+    private static final long serialVersionUID = 1L;
+
+    private final Constructor<? extends Model> constructor;
+    private final JsonDeserializer<Object> valueDeserializer;
+    private final TypeDeserializer valueTypeDeserializer;
+
+    public ModelDeserializer(Class<? extends Model> modelClass) {
+        this(modelClass, findConstructor(modelClass), null, null);
+    }
+
+    protected ModelDeserializer(Class<? extends Model> modelClass, Constructor<? extends Model> constructor,
+            JsonDeserializer<Object> valueDeserializer, TypeDeserializer valueTypeDeserializer) {
+        super(modelClass);
+        this.constructor = constructor;
+        this.valueDeserializer = valueDeserializer;
+        this.valueTypeDeserializer = valueTypeDeserializer;
+    }
+
+    private static Constructor<? extends Model> findConstructor(Class<? extends Model> modelClass) {
+        try {
+            Constructor<? extends Model> ctor = modelClass.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return ctor;
+        } catch (NoSuchMethodException e) {
+            // Can still be used for updating existing instances.
+            return null;
+        }
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property)
+            throws JsonMappingException {
+        if (valueDeserializer != null) {
+            return this;
+        }
+        JavaType objectType = ctxt.constructType(Object.class);
+        JsonDeserializer<Object> deser = ctxt.findContextualValueDeserializer(objectType, property);
+        TypeDeserializer typeDeser = ctxt.getFactory().findTypeDeserializer(ctxt.getConfig(), objectType);
+        return new ModelDeserializer(handledModelClass(), constructor, deser, typeDeser);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Class<? extends Model> handledModelClass() {
+        return (Class<? extends Model>) handledType();
+    }
+
+    @Override
+    public boolean isCachable() {
+        return true;
+    }
+
+    @Override
+    public Model deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (constructor == null) {
+            throw JsonMappingException.from(p, "No default constructor for " + handledType().getName());
+        }
+        Model model;
+        try {
+            model = constructor.newInstance();
+        } catch (Exception e) {
+            throw JsonMappingException.from(p, "Can not instantiate " + handledType().getName(), e);
+        }
+        return deserialize(p, ctxt, model);
+    }
+
+    @Override
+    public Model deserialize(JsonParser p, DeserializationContext ctxt, Model model) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.START_OBJECT) {
+            t = p.nextToken();
+        }
+        Map<String, Object> data = ModelAccess.data(model);
+        ObjectReader lazyReader = (ObjectReader) ctxt.getAttribute(LazyAttributeMap.READER_ATTRIBUTE);
+        ModelShapes shapes = (ModelShapes) ctxt.getAttribute(ModelShapes.READER_ATTRIBUTE);
+        if (lazyReader != null) {
+            if (!(data instanceof LazyAttributeMap)) {
+                data = new LazyAttributeMap(data);
+                ModelAccess.setData(model, data);
+            }
+        } else if (shapes != null && !(data instanceof CompactAttributeMap)) {
+            CompactAttributeMap compact = new CompactAttributeMap(shapes.forClass(model.getClass()));
+            compact.putAll(data);
+            data = compact;
+            ModelAccess.setData(model, data);
+        }
+        for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            data.put(name, lazyReader == null ? readAttribute(p, ctxt) : readLazyAttribute(p, ctxt, lazyReader));
+        }
+        if (t != JsonToken.END_OBJECT) {
+            throw JsonMappingException.from(p, "Expected " + JsonToken.END_OBJECT + " for " + handledType().getName()
+                    + " but got " + t);
+        }
+        if (shapes != null && data instanceof CompactAttributeMap) {
+            ((CompactAttributeMap) data).trim();
+        }
+        return model;
+    }
+
+    @Override
+    public Object deserializeWithType(JsonParser p, DeserializationContext ctxt, TypeDeserializer typeDeserializer)
+            throws IOException {
+        return typeDeserializer.deserializeTypedFromObject(p, ctxt);
+    }
+
+    /**
+     * Scalars are read as usual, objects and arrays are skipped. For JSON text parsed from a byte[] or String only
+     * the range is kept, otherwise the tokens are copied.
+     */
+    protected Object readLazyAttribute(JsonParser p, DeserializationContext ctxt, ObjectReader lazyReader)
+            throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t != JsonToken.START_OBJECT && t != JsonToken.START_ARRAY) {
+            return readAttribute(p, ctxt);
+        }
+        JsonLocation start = p.getTokenLocation();
+        Object source = start.getSourceRef();
+        if ((source instanceof byte[] || source instanceof String)
+                && JsonFactory.FORMAT_NAME_JSON.equals(lazyReader.getFactory().getFormatName())) {
+            boolean bytes = source instanceof byte[];
+            // The byte offsets are relative to where the parsing of the byte[] started.
+            Integer base = bytes ? (Integer) ctxt.getAttribute(LazyAttributeMap.OFFSET_ATTRIBUTE) : null;
+            long shift = base == null ? 0 : base;
+            long from = shift + (bytes ? start.getByteOffset() : start.getCharOffset());
+            // Sanity check, the offsets are only usable if they point into the source as is.
+            if (charAt(source, from) == (t == JsonToken.START_OBJECT ? '{' : '[')) {
+                p.skipChildren();
+                JsonLocation end = p.getCurrentLocation();
+                long to = shift + (bytes ? end.getByteOffset() : end.getCharOffset());
+                if (charAt(source, to - 1) != (t == JsonToken.START_OBJECT ? '}' : ']')) {
+                    throw JsonMappingException.from(p, "Inconsistent source offsets for lazy attribute");
+                }
+                return new LazyAttributeMap.RawJson(lazyReader, source, (int) from, (int) (to - from));
+            }
+        }
+        TokenBuffer buffer = new TokenBuffer(p, ctxt);
+        buffer.copyCurrentStructure(p);
+        return new LazyAttributeMap.Buffered(lazyReader, buffer);
+    }
+
+    private static int charAt(Object source, long index) {
+        if (source instanceof byte[]) {
+            byte[] bytes = (byte[]) source;
+            return index >= 0 && index < bytes.length ? bytes[(int) index] : -1;
+        }
+        String text = (String) source;
+        return index >= 0 && index < text.length() ? text.charAt((int) index) : -1;
+    }
+
+    protected Object readAttribute(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (valueTypeDeserializer != null) {
+            return valueDeserializer.deserializeWithType(p, ctxt, valueTypeDeserializer);
+        }
+        return valueDeserializer.deserialize(p, ctxt);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.Serializers;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Registers {@link ModelSerializer} and {@link ModelDeserializer} for Model and all its subclasses. These replace the
+ * any getter/any setter path of the mixins with direct access to the attributes map. Class level mixin annotations like
+ * the "@c" JsonTypeInfo still apply.
+ * 
+ * mapper.registerModule(new ModelModule());
+ */
+public class ModelModule extends SimpleModule {
+    private static final long serialVersionUID = 1L;
+
+    public ModelModule() {
+        super("ModelModule");
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        final ModelSerializer serializer = new ModelSerializer();
+        context.addSerializers(new Serializers.Base() {
+            @Override
+            public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type,
+                    BeanDescription beanDesc) {
+                return Model.class.isAssignableFrom(type.getRawClass()) ? serializer : null;
+            }
+        });
+        context.addDeserializers(new Deserializers.Base() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config,
+                    BeanDescription beanDesc) throws JsonMappingException {
+                if (Model.class.isAssignableFrom(type.getRawClass())) {
+                    return new ModelDeserializer((Class<? extends Model>) type.getRawClass());
+                }
+                return null;
+            }
+        });
+    }
+}
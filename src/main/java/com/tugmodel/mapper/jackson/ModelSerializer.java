@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.impl.PropertySerializerMap;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Writes the attributes map of a model straight to the generator, without the map copy made by the any getter and
+ * without bean introspection. The "id" and "version" are written first like the mixins do. Type information("@c" or
+ * default typing) is handled by Jackson through {@link #serializeWithType}.
+ * 
+ * The unparsed attributes of a lazily deserialized model are written back as they were read, without parsing them.
+ * Nested models found in the {@link SerializedFormCache} of the mapper, if any, are spliced in from their cached form.
+ * 
+ * NOTE: the output has the flat layout of the any getter mixins, not the nested "data" layout of the TypedMapper mixin.
+ */
+public class ModelSerializer extends StdSerializer<Model> implements ContextualSerializer {
+    private static final long serialVersionUID = 1L;
+
+    // Type serializer for the attribute values(declared as Object), null if no default typing.
+    private final TypeSerializer valueTypeSerializer;
+    private final boolean suppressNulls;
+    // Same dynamic serializer cache as the one used by Jackson's MapSerializer for Object values.
+    protected transient PropertySerializerMap dynamicSerializers = PropertySerializerMap.emptyForProperties();
+
+    public ModelSerializer() {
+        this(null, false);
+    }
+
+    protected ModelSerializer(TypeSerializer valueTypeSerializer, boolean suppressNulls) {
+        super(Model.class);
+        this.valueTypeSerializer = valueTypeSerializer;
+        this.suppressNulls = suppressNulls;
+    }
+
+    protected TypeSerializer getValueTypeSerializer() {
+        return valueTypeSerializer;
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
+            throws JsonMappingException {
+        TypeSerializer typeSer = provider.findTypeSerializer(provider.constructType(Object.class));
+        JsonInclude.Include incl = provider.getConfig().getDefaultPropertyInclusion().getValueInclusion();
+        boolean suppress = incl != JsonInclude.Include.ALWAYS && incl != JsonInclude.Include.USE_DEFAULTS;
+        if (typeSer == valueTypeSerializer && suppress == suppressNulls) {
+            return this;
+        }
+        return withSettings(typeSer, suppress);
+    }
+
+    protected ModelSerializer withSettings(TypeSerializer valueTypeSerializer, boolean suppressNulls) {
+        return new ModelSerializer(valueTypeSerializer, suppressNulls);
+    }
+
+    @Override
+    public void serialize(Model value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (writeCached(value, null, gen, provider)) {
+            return;
+        }
+        gen.writeStartObject();
+        writeAttributes(value, gen, provider);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(Model value, JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer)
+            throws IOException {
+        if (writeCached(value, typeSer, gen, provider)) {
+            return;
+        }
+        typeSer.writeTypePrefixForObject(value, gen);
+        writeAttributes(value, gen, provider);
+        typeSer.writeTypeSuffixForObject(value, gen);
+    }
+
+    /**
+     * Splices in the cached form of a nested model, see {@link SerializedFormCache}. The fragment itself is rendered
+     * as a root value so it is written normally.
+     */
+    private boolean writeCached(Model value, TypeSerializer typeSer, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        if (gen.getOutputContext().inRoot()) {
+            return false;
+        }
+        SerializedFormCache.Binding cache = (SerializedFormCache.Binding) provider
+                .getAttribute(SerializedFormCache.WRITER_ATTRIBUTE);
+        return cache != null && cache.write(value, this, typeSer, gen, provider);
+    }
+
+    protected void writeAttributes(Model value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Map<String, Object> data = ModelAccess.data(value);
+        if (data.containsKey(Model.KEY_ID)) {
+            writeAttribute(Model.KEY_ID, data.get(Model.KEY_ID), gen, provider);
+        }
+        if (data.containsKey(Model.KEY_VERSION)) {
+            writeAttribute(Model.KEY_VERSION, data.get(Model.KEY_VERSION), gen, provider);
+        }
+        Iterable<Map.Entry<String, Object>> entries = data instanceof LazyAttributeMap
+                ? ((LazyAttributeMap) data).rawEntrySet() : data.entrySet();
+        for (Map.Entry<String, Object> entry : entries) {
+            String name = entry.getKey();
+            if (!Model.KEY_ID.equals(name) && !Model.KEY_VERSION.equals(name)) {
+                writeAttribute(name, entry.getValue(), gen, provider);
+            }
+        }
+    }
+
+    protected void writeAttribute(String name, Object value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        if (value == null) {
+            if (!suppressNulls) {
+                gen.writeFieldName(name);
+                provider.defaultSerializeNull(gen);
+            }
+            return;
+        }
+        gen.writeFieldName(name);
+        writeValue(value, gen, provider);
+    }
+
+    /**
+     * Writes a non null attribute value the way the any getter would, i.e. declared as Object.
+     */
+    protected void writeValue(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Class<?> cls = value.getClass();
+        JsonSerializer<Object> ser = dynamicSerializers.serializerFor(cls);
+        if (ser == null) {
+            PropertySerializerMap.SerializerAndMapResult result = dynamicSerializers
+                    .findAndAddSecondarySerializer(cls, provider, null);
+            dynamicSerializers = result.map;
+            ser = result.serializer;
+        }
+        if (valueTypeSerializer != null) {
+            ser.serializeWithType(value, gen, provider, valueTypeSerializer);
+        } else {
+            ser.serialize(value, gen, provider);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ordered, immutable key table shared by the {@link CompactAttributeMap} of all the models with the same attribute
+ * names(the "hidden class" of JavaScript engines). A key not in the shape moves the map to a child shape with the key
+ * appended. The children are cached so that models getting the same keys in the same order end up sharing the same
+ * shape again.
+ */
+final class ModelShape {
+    /** Larger models keep the extra attributes in the overflow map of their instance. */
+    static final int MAX_KEYS = 128;
+    /** Limits the shapes created by models with generated keys(ids, timestamps, ...) used as attribute names. */
+    static final int MAX_TRANSITIONS = 16;
+
+    private final String[] keys;
+    private final Map<String, Integer> index;
+    private final ConcurrentMap<String, ModelShape> transitions = new ConcurrentHashMap<String, ModelShape>(4);
+
+    ModelShape(List<String> keys) {
+        this(keys.toArray(new String[0]));
+    }
+
+    private ModelShape(String[] keys) {
+        this.keys = keys;
+        index = new HashMap<String, Integer>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            index.putIfAbsent(keys[i], i);
+        }
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @return The slot of the key or -1.
+     */
+    int indexOf(Object key) {
+        Integer slot = index.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return The shape with the key appended or null if this shape can not grow any more.
+     */
+    ModelShape with(String key) {
+        ModelShape next = transitions.get(key);
+        if (next == null) {
+            if (keys.length >= MAX_KEYS || transitions.size() >= MAX_TRANSITIONS) {
+                return null;
+            }
+            String[] nextKeys = Arrays.copyOf(keys, keys.length + 1);
+            nextKeys[keys.length] = key;
+            next = new ModelShape(nextKeys);
+            ModelShape existing = transitions.putIfAbsent(key, next);
+            if (existing != null) {
+                next = existing;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelShape" + Arrays.toString(keys);
+    }
+}
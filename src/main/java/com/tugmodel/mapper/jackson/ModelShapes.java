@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.tugmodel.client.model.Model;
+import com.tugmodel.client.model.meta.Meta;
+
+/**
+ * The attribute shapes of the model classes, used when deserializing with compact storage, see
+ * {@link JacksonMapper#setCompactStorage(boolean)}. The models then keep their attributes in a
+ * {@link CompactAttributeMap}: an array of values indexed through a key table shared by all the models of the class,
+ * instead of a LinkedHashMap with an entry(and a key String) per attribute.
+ * 
+ * The models of a class start from the shape of its meta(the attribute names of the meta, if registered) or just
+ * "id" and "version", and follow the transitions of that shape for the other keys. Since the transitions are cached
+ * the models with the same keys end up sharing the same shape, each with a value array of just its own keys.
+ */
+public final class ModelShapes {
+    /**
+     * Reader attribute holding the ModelShapes. Its presence is what turns on the compact storage in
+     * {@link ModelDeserializer}.
+     */
+    static final String READER_ATTRIBUTE = ModelShapes.class.getName();
+
+    private static final List<String> BASE_KEYS = Collections.unmodifiableList(
+            Arrays.asList(Model.KEY_ID, Model.KEY_VERSION));
+
+    private final ConcurrentMap<Class<?>, ModelShape> shapes = new ConcurrentHashMap<Class<?>, ModelShape>();
+
+    /**
+     * Seeds the shape of the meta's model class with the names of the meta "attributes", after "id" and "version".
+     */
+    public void register(Meta meta) {
+        register(meta.modelClass(), attributeNames(meta));
+    }
+
+    public void register(Class<?> modelClass, Collection<String> keys) {
+        List<String> shapeKeys = new ArrayList<String>(BASE_KEYS);
+        for (String key : keys) {
+            if (!shapeKeys.contains(key)) {
+                shapeKeys.add(key);
+            }
+        }
+        shapes.put(modelClass, new ModelShape(shapeKeys));
+    }
+
+    public void registerAll(Collection<Meta> metas) {
+        if (metas != null) {
+            for (Meta meta : metas) {
+                register(meta);
+            }
+        }
+    }
+
+    /**
+     * Forgets the shape of the meta's model class. Models already deserialized keep theirs.
+     */
+    public void evict(Meta meta) {
+        shapes.remove(meta.modelClass());
+    }
+
+    /**
+     * The shape new models of the class start with.
+     */
+    ModelShape forClass(Class<?> modelClass) {
+        ModelShape shape = shapes.get(modelClass);
+        if (shape == null) {
+            shape = new ModelShape(BASE_KEYS);
+            ModelShape existing = shapes.putIfAbsent(modelClass, shape);
+            if (existing != null) {
+                shape = existing;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * The names of the meta "attributes", given either as a list of names, a list of attribute definitions with a
+     * "name" or a map keyed by name.
+     */
+    static List<String> attributeNames(Meta meta) {
+        Object attributes = meta.get("attributes");
+        List<String> names = new ArrayList<String>();
+        if (attributes instanceof Map) {
+            for (Object name : ((Map<?, ?>) attributes).keySet()) {
+                names.add(String.valueOf(name));
+            }
+        } else if (attributes instanceof Collection) {
+            for (Object attribute : (Collection<?>) attributes) {
+                Object name = attribute;
+                if (attribute instanceof Model) {
+                    name = ((Model) attribute).get("name");
+                } else if (attribute instanceof Map) {
+                    name = ((Map<?, ?>) attribute).get("name");
+                }
+                if (name instanceof String) {
+                    names.add((String) name);
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * Frozen copy of the attributes of a model, taken with {@link JacksonMapper#snapshot(Model)} to later compute the
+ * {@link MergePatch} of what changed since. Nested models, maps, collections and arrays are copied, the other values
+ * (Strings, numbers, ...) are expected to be immutable and are shared with the model.
+ */
+public final class ModelSnapshot {
+    private final Class<?> modelClass;
+    private final Map<String, Object> attributes;
+
+    private ModelSnapshot(Class<?> modelClass, Map<String, Object> attributes) {
+        this.modelClass = modelClass;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    static ModelSnapshot of(Model model) {
+        return new ModelSnapshot(model.getClass(), copy(ModelAccess.data(model)));
+    }
+
+    public Class<?> getModelClass() {
+        return modelClass;
+    }
+
+    Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    private static Map<String, Object> copy(Map<?, ?> map) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>(map.size() * 2);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), copy(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Model) {
+            return of((Model) value);
+        } else if (value instanceof Map) {
+            return copy((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            Collection<Object> result = value instanceof Set ? new LinkedHashSet<Object>()
+                    : new ArrayList<Object>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                result.add(copy(element));
+            }
+            return result;
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            Object[] result = new Object[array.length];
+            for (int i = 0; i < array.length; i++) {
+                result[i] = copy(array[i]);
+            }
+            return result;
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * The attributes of a model, snapshot or map, null for any other value.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> attributes(Object value) {
+        if (value instanceof Model) {
+            return ModelAccess.data((Model) value);
+        } else if (value instanceof ModelSnapshot) {
+            return ((ModelSnapshot) value).attributes;
+        } else if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        return null;
+    }
+
+    /**
+     * The class of a model or snapshot, null for a map.
+     */
+    static Class<?> modelClass(Object value) {
+        if (value instanceof ModelSnapshot) {
+            return ((ModelSnapshot) value).modelClass;
+        }
+        return value instanceof Model ? value.getClass() : null;
+    }
+
+    /**
+     * Compares by content, a model and its snapshot being equal if they have the same class and attributes.
+     */
+    static boolean deepEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        Map<String, Object> attributesA = attributes(a);
+        Map<String, Object> attributesB = attributes(b);
+        if (attributesA != null || attributesB != null) {
+            if (attributesA == null || attributesB == null || modelClass(a) != modelClass(b)
+                    || attributesA.size() != attributesB.size()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : attributesA.entrySet()) {
+                Object other = attributesB.get(entry.getKey());
+                if (!deepEquals(entry.getValue(), other)
+                        || (other == null && !attributesB.containsKey(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List && b instanceof List) {
+            return elementsEqual(((List<?>) a).iterator(), ((List<?>) b).iterator());
+        }
+        if (a instanceof Object[] && b instanceof Object[]) {
+            Object[] arrayA = (Object[]) a;
+            Object[] arrayB = (Object[]) b;
+            if (arrayA.length != arrayB.length) {
+                return false;
+            }
+            for (int i = 0; i < arrayA.length; i++) {
+                if (!deepEquals(arrayA[i], arrayB[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    private static boolean elementsEqual(Iterator<?> a, Iterator<?> b) {
+        while (a.hasNext() && b.hasNext()) {
+            if (!deepEquals(a.next(), b.next())) {
+                return false;
+            }
+        }
+        return !a.hasNext() && !b.hasNext();
+    }
+
+    @Override
+    public String toString() {
+        return "ModelSnapshot[" + modelClass.getName() + "]" + attributes;
+    }
+}
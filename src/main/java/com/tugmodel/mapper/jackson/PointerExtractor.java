@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Finds the values of a few JSON Pointers in one pass over the tokens of a serialized model, see
+ * {@link JacksonMapper#extractAll(Object, String...)}. The pointers are merged in a tree so that only the sub-trees
+ * on the way to a requested value are entered, all the others are skipped without building anything. Only the matched
+ * values are deserialized and the parsing stops as soon as all of them are found.
+ * 
+ * The pointers address the model attributes whatever the layout of the flavour: the type id wrapper arrays of default
+ * typing are looked through and so is the "data" object of the TypedMapper mixin, an "@c" type property is simply
+ * another property. E.g. "/address/city" matches both {"address":{"@c":"...","city":...}} and
+ * ["...Model",{"data":["...LinkedHashMap",{"address":[...]}]}]. The "data" object is only looked through for the
+ * root and for the values whose type id is a model written with that layout, a map attribute can have a "data" key.
+ * 
+ * NOTE: with default typing an array starting with a String is taken as a type id wrapper, which is ambiguous only for
+ * final array types(String[]) since lists are wrapped too.
+ */
+final class PointerExtractor {
+    private static final Object NOT_FOUND = new Object();
+
+    private final ObjectReader valueReader;
+    private final boolean typed;
+    private final boolean rootDataLayout;
+    private final Predicate<String> dataLayoutTypeIds;
+    private final Map<String, Boolean> dataLayoutByTypeId = new HashMap<String, Boolean>();
+    private final Node root = new Node();
+    private final Map<String, Object> found = new LinkedHashMap<String, Object>();
+    private int leaves;
+
+    /**
+     * @param valueReader Reader for Object, used for the matched values.
+     * @param typed True if the values are written with default typing(wrapper arrays).
+     * @param rootDataLayout True if the root model is written as {"data":{...}} by the TypedMapper mixin.
+     * @param dataLayoutTypeIds Tells if the type id is of a model written as {"data":{...}}.
+     */
+    PointerExtractor(ObjectReader valueReader, boolean typed, boolean rootDataLayout,
+            Predicate<String> dataLayoutTypeIds, List<String> pointers) {
+        this.valueReader = valueReader;
+        this.typed = typed;
+        this.rootDataLayout = rootDataLayout;
+        this.dataLayoutTypeIds = dataLayoutTypeIds;
+        for (String pointer : pointers) {
+            add(pointer);
+        }
+    }
+
+    private void add(String pointer) {
+        Node node = root;
+        for (JsonPointer ptr = JsonPointer.compile(pointer); !ptr.matches(); ptr = ptr.tail()) {
+            node = node.child(ptr.getMatchingProperty(), true);
+        }
+        if (node.pointer == null) {
+            node.pointer = pointer;
+            leaves++;
+        }
+    }
+
+    /**
+     * @param p Positioned before the root value.
+     * @return The values found by pointer. A pointer that does not match is missing, one matching a null maps to null.
+     */
+    Map<String, Object> extract(JsonParser p) throws IOException {
+        if (leaves > 0 && p.nextToken() != null) {
+            walk(p, root, rootDataLayout);
+        }
+        return found;
+    }
+
+    private boolean done() {
+        return found.size() == leaves;
+    }
+
+    /**
+     * Handles the value at the current token.
+     * 
+     * @param dataLayout True if the value, when not in a type id wrapper, is a model written as {"data":{...}}.
+     * @return True when all the pointers have been found, the rest of the input is then not read.
+     */
+    private boolean walk(JsonParser p, Node node, boolean dataLayout) throws IOException {
+        if (node.pointer != null) {
+            // Read as a whole, including its type information.
+            Object value = valueReader.readValue(p);
+            found.put(node.pointer, value);
+            if (node.children != null) {
+                resolve(value, node);
+            }
+            return done();
+        }
+        JsonToken t = p.getCurrentToken();
+        if (typed && t == JsonToken.START_ARRAY) {
+            t = p.nextToken();
+            if (t != JsonToken.VALUE_STRING) {
+                // A plain array, already on its first element.
+                return walkArray(p, node, t);
+            }
+            boolean wrappedDataLayout = isDataLayout(p.getText());
+            // The wrapped value is not itself a wrapper.
+            if (walkContainer(p, node, p.nextToken(), wrappedDataLayout)) {
+                return true;
+            }
+            // Skips up to the end of the wrapper.
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                p.skipChildren();
+            }
+            return false;
+        }
+        return walkContainer(p, node, t, dataLayout);
+    }
+
+    private boolean isDataLayout(String typeId) {
+        Boolean dataLayout = dataLayoutByTypeId.get(typeId);
+        if (dataLayout == null) {
+            dataLayout = dataLayoutTypeIds.test(typeId);
+            dataLayoutByTypeId.put(typeId, dataLayout);
+        }
+        return dataLayout;
+    }
+
+    private boolean walkContainer(JsonParser p, Node node, JsonToken t, boolean dataLayout) throws IOException {
+        if (t == JsonToken.START_OBJECT) {
+            return walkObject(p, node, dataLayout);
+        } else if (t == JsonToken.START_ARRAY) {
+            return walkArray(p, node, p.nextToken());
+        }
+        // A scalar where the pointer goes further.
+        return false;
+    }
+
+    private boolean walkObject(JsonParser p, Node node, boolean dataLayout) throws IOException {
+        for (JsonToken t = p.nextToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            Node child = node.child(name, false);
+            if (child == null && dataLayout && "data".equals(name)) {
+                // The attributes of a model, the pointer goes on inside.
+                child = node;
+            }
+            if (child == null) {
+                p.skipChildren();
+            } else if (walk(p, child, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean walkArray(JsonParser p, Node node, JsonToken first) throws IOException {
+        int index = 0;
+        for (JsonToken t = first; t != JsonToken.END_ARRAY && t != null; t = p.nextToken(), index++) {
+            Node child = node.child(Integer.toString(index), false);
+            if (child == null) {
+                p.skipChildren();
+            } else if (walk(p, child, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The pointers going further than a value that was already read are resolved in that value.
+     */
+    private void resolve(Object value, Node node) {
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            Object child = childValue(value, entry.getKey());
+            if (child == NOT_FOUND) {
+                continue;
+            }
+            Node childNode = entry.getValue();
+            if (childNode.pointer != null) {
+                found.put(childNode.pointer, child);
+            }
+            if (childNode.children != null) {
+                resolve(child, childNode);
+            }
+        }
+    }
+
+    private static Object childValue(Object value, String name) {
+        Map<?, ?> map = value instanceof Model ? ModelAccess.data((Model) value)
+                : value instanceof Map ? (Map<?, ?>) value : null;
+        if (map != null) {
+            return map.containsKey(name) ? map.get(name) : NOT_FOUND;
+        }
+        int index = index(name);
+        if (value instanceof List && index >= 0 && index < ((List<?>) value).size()) {
+            return ((List<?>) value).get(index);
+        } else if (value instanceof Object[] && index >= 0 && index < ((Object[]) value).length) {
+            return ((Object[]) value)[index];
+        }
+        return NOT_FOUND;
+    }
+
+    // Same rule as JsonPointer: digits only, no leading zero.
+    private static int index(String name) {
+        int length = name.length();
+        if (length == 0 || length > 9 || (length > 1 && name.charAt(0) == '0')) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(name);
+    }
+
+    private static final class Node {
+        // The requested pointer ending here, if any.
+        String pointer;
+        Map<String, Node> children;
+
+        Node child(String name, boolean create) {
+            Node child = children == null ? null : children.get(name);
+            if (child == null && create) {
+                if (children == null) {
+                    children = new LinkedHashMap<String, Node>();
+                }
+                child = new Node();
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream writing into pooled ByteBuffers, switching to a bigger one when full. {@link #close()} gives the buffer
+ * back to the pool, so the content must be consumed before that.
+ */
+public class PooledOutputStream extends OutputStream {
+    private final ByteBufferPool pool;
+    private ByteBuffer buffer;
+    // The size when closed, the buffer being then back in the pool.
+    private int closedSize;
+
+    public PooledOutputStream(ByteBufferPool pool, int initialCapacity) {
+        this.pool = pool;
+        this.buffer = pool.acquire(initialCapacity);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        buffer.put(b, off, len);
+    }
+
+    private void ensureCapacity(int len) {
+        checkNotClosed();
+        if (buffer.remaining() < len) {
+            ByteBuffer bigger = pool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + len));
+            buffer.flip();
+            bigger.put(buffer);
+            pool.release(buffer);
+            buffer = bigger;
+        }
+    }
+
+    private void checkNotClosed() {
+        if (buffer == null) {
+            throw new IllegalStateException("Closed");
+        }
+    }
+
+    /**
+     * The number of bytes written, still available after {@link #close()}.
+     */
+    public int size() {
+        return buffer == null ? closedSize : buffer.position();
+    }
+
+    /**
+     * The written bytes, from position 0 to the limit. Valid until {@link #close()}.
+     * 
+     * @throws IllegalStateException If closed.
+     */
+    public ByteBuffer getBuffer() {
+        checkNotClosed();
+        ByteBuffer result = buffer.duplicate();
+        result.flip();
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            closedSize = buffer.position();
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The attributes to serialize, given as paths like "id", "owner.name" or "items[*].sku". A path applies to every
+ * element of a collection it goes through so "items[*].sku" and "items.sku" are the same. A path ending at an
+ * attribute includes its whole value, e.g. "owner" wins over "owner.name".
+ * 
+ * Projections are immutable and the compiled ones are cached, see {@link #of(String...)}.
+ */
+public final class Projection {
+    private static final int MAX_CACHED = 1024;
+    private static final ConcurrentMap<String, Projection> cache = new ConcurrentHashMap<String, Projection>();
+    private static final Projection ALL = new Projection("*", true, Collections.<String, Projection> emptyMap());
+
+    private final String key;
+    private final boolean all;
+    private final Map<String, Projection> children;
+
+    private Projection(String key, boolean all, Map<String, Projection> children) {
+        this.key = key;
+        this.all = all;
+        this.children = children;
+    }
+
+    public static Projection of(String... paths) {
+        String key = String.join(",", paths);
+        Projection projection = cache.get(key);
+        if (projection == null) {
+            projection = compile(key, paths);
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            Projection existing = cache.putIfAbsent(key, projection);
+            if (existing != null) {
+                projection = existing;
+            }
+        }
+        return projection;
+    }
+
+    private static Projection compile(String key, String[] paths) {
+        Node root = new Node();
+        for (String path : paths) {
+            Node node = root;
+            for (String segment : path.split("\\.", -1)) {
+                String name = segment.endsWith("[*]") ? segment.substring(0, segment.length() - 3) : segment;
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid projection path: " + path);
+                }
+                if (node.all) {
+                    break;
+                }
+                node = node.children.computeIfAbsent(name, n -> new Node());
+            }
+            node.all = true;
+            node.children.clear();
+        }
+        return root.toProjection(key);
+    }
+
+    /**
+     * True if the whole value is included.
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    /**
+     * The projections of the included attributes, in the order they were first given.
+     */
+    public Map<String, Projection> getChildren() {
+        return children;
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Projection && key.equals(((Projection) obj).key);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    private static final class Node {
+        private boolean all;
+        private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+        Projection toProjection(String key) {
+            if (all) {
+                return ALL;
+            }
+            Map<String, Projection> result = new LinkedHashMap<String, Projection>();
+            for (Map.Entry<String, Node> entry : children.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().toProjection(key + "/" + entry.getKey()));
+            }
+            return new Projection(key, false, Collections.unmodifiableMap(result));
+        }
+    }
+}
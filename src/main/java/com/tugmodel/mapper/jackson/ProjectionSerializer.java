@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Writes only the attributes of a {@link Projection}. The attributes outside the projection are not visited at all,
+ * the included ones are written like {@link ModelSerializer} does. Models keep their type information and layout(flat
+ * or the "data" one of the TypedMapper mixin), the collections and maps the projection goes through are written as
+ * plain arrays and objects.
+ * 
+ * Not registered in the mapper, {@link JacksonMapper#serialize(Object, Projection)} wraps the root value in a
+ * {@link Projected}.
+ */
+public class ProjectionSerializer extends ModelSerializer {
+    private static final long serialVersionUID = 1L;
+    private static final Object NO_TYPE = new Object();
+
+    private final Projection projection;
+    // Type serializer(Object) per model class, NO_TYPE when there is none.
+    private final transient ConcurrentMap<Class<?>, Object> modelTypeSerializers =
+            new ConcurrentHashMap<Class<?>, Object>();
+    // Per model class, true when its full serialization nests the attributes under "data".
+    private final transient ConcurrentMap<Class<?>, Boolean> dataLayouts = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    public ProjectionSerializer(Projection projection) {
+        this(projection, null, false);
+    }
+
+    protected ProjectionSerializer(Projection projection, TypeSerializer valueTypeSerializer, boolean suppressNulls) {
+        super(valueTypeSerializer, suppressNulls);
+        this.projection = projection;
+    }
+
+    @Override
+    protected ModelSerializer withSettings(TypeSerializer valueTypeSerializer, boolean suppressNulls) {
+        return new ProjectionSerializer(projection, valueTypeSerializer, suppressNulls);
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    @Override
+    public void serialize(Model value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        writeRoot(value, gen, provider);
+    }
+
+    public void writeRoot(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (value instanceof Model && !projection.isAll()) {
+            // Like a root value the model gets the type information of its class, not of Object.
+            writeModel((Model) value, projection, modelTypeSerializer(value.getClass(), provider), gen, provider);
+        } else if (value != null && projection.isAll()) {
+            provider.defaultSerializeValue(value, gen);
+        } else {
+            writeProjected(value, projection, gen, provider);
+        }
+    }
+
+    protected void writeProjected(Object value, Projection node, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        if (value == null) {
+            provider.defaultSerializeNull(gen);
+        } else if (node.isAll()) {
+            writeValue(value, gen, provider);
+        } else if (value instanceof Model) {
+            writeModel((Model) value, node, getValueTypeSerializer(), gen, provider);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            gen.writeStartObject();
+            for (Map.Entry<String, Projection> entry : node.getChildren().entrySet()) {
+                if (map.containsKey(entry.getKey())) {
+                    writeProjectedAttribute(entry.getKey(), map.get(entry.getKey()), entry.getValue(), gen, provider);
+                }
+            }
+            gen.writeEndObject();
+        } else if (value instanceof Collection) {
+            gen.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeProjected(element, node, gen, provider);
+            }
+            gen.writeEndArray();
+        } else if (value instanceof Object[]) {
+            gen.writeStartArray();
+            for (Object element : (Object[]) value) {
+                writeProjected(element, node, gen, provider);
+            }
+            gen.writeEndArray();
+        } else {
+            // Nothing to project into.
+            writeValue(value, gen, provider);
+        }
+    }
+
+    protected void writeModel(Model model, Projection node, TypeSerializer typeSer, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        if (typeSer != null) {
+            typeSer.writeTypePrefixForObject(model, gen);
+        } else {
+            gen.writeStartObject();
+        }
+        Map<String, Object> data = ModelAccess.data(model);
+        boolean dataLayout = isDataLayout(model.getClass(), provider);
+        if (dataLayout) {
+            gen.writeFieldName("data");
+            writeStartMap(data, gen);
+        }
+        for (Map.Entry<String, Projection> entry : node.getChildren().entrySet()) {
+            String name = entry.getKey();
+            if (!data.containsKey(name)) {
+                continue;
+            }
+            // Whole values of a lazy model are written back unparsed.
+            Object value = entry.getValue().isAll() && data instanceof LazyAttributeMap
+                    ? ((LazyAttributeMap) data).getRaw(name) : data.get(name);
+            writeProjectedAttribute(name, value, entry.getValue(), gen, provider);
+        }
+        if (dataLayout) {
+            writeEndMap(data, gen);
+        }
+        if (typeSer != null) {
+            typeSer.writeTypeSuffixForObject(model, gen);
+        } else {
+            gen.writeEndObject();
+        }
+    }
+
+    protected void writeProjectedAttribute(String name, Object value, Projection node, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        if (value == null || node.isAll()) {
+            writeAttribute(name, value, gen, provider);
+        } else {
+            gen.writeFieldName(name);
+            writeProjected(value, node, gen, provider);
+        }
+    }
+
+    // The "data" map is declared as Map so it only has type information with default typing.
+    private void writeStartMap(Map<String, Object> data, JsonGenerator gen) throws IOException {
+        if (getValueTypeSerializer() != null) {
+            getValueTypeSerializer().writeTypePrefixForObject(data, gen);
+        } else {
+            gen.writeStartObject();
+        }
+    }
+
+    private void writeEndMap(Map<String, Object> data, JsonGenerator gen) throws IOException {
+        if (getValueTypeSerializer() != null) {
+            getValueTypeSerializer().writeTypeSuffixForObject(data, gen);
+        } else {
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Same layout as the serializer the mapper resolves for the class: flat for a {@link ModelSerializer}(registered
+     * by the ModelModule) or an any getter, "data" for a bean serializer of the TypedMapper mixin.
+     */
+    private boolean isDataLayout(Class<?> cls, SerializerProvider provider) throws IOException {
+        Boolean dataLayout = dataLayouts.get(cls);
+        if (dataLayout == null) {
+            dataLayout = isDataLayout(provider.findValueSerializer(cls, null));
+            dataLayouts.putIfAbsent(cls, dataLayout);
+        }
+        return dataLayout;
+    }
+
+    /**
+     * @return True if the model serializer writes the attributes in a "data" object.
+     */
+    static boolean isDataLayout(JsonSerializer<?> serializer) {
+        if (!(serializer instanceof ModelSerializer)) {
+            for (Iterator<PropertyWriter> it = serializer.properties(); it.hasNext();) {
+                if ("data".equals(it.next().getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private TypeSerializer modelTypeSerializer(Class<?> cls, SerializerProvider provider) throws IOException {
+        Object typeSer = modelTypeSerializers.get(cls);
+        if (typeSer == null) {
+            typeSer = provider.findTypeSerializer(provider.constructType(cls));
+            modelTypeSerializers.putIfAbsent(cls, typeSer == null ? NO_TYPE : typeSer);
+        }
+        return typeSer == NO_TYPE ? null : (TypeSerializer) typeSer;
+    }
+
+    /**
+     * Root value of a projected serialization. Final so that default typing does not add a type id for it.
+     */
+    public static final class Projected implements JsonSerializable {
+        private final Object value;
+        private final ProjectionSerializer serializer;
+
+        public Projected(Object value, ProjectionSerializer serializer) {
+            this.value = value;
+            this.serializer = serializer;
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            serializer.writeRoot(value, gen, serializers);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+    }
+}
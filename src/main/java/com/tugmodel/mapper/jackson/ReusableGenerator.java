@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * A JSON generator kept open and reused for many root values, each one going to a different target. Jackson has no
+ * way to reset a generator but a JSON generator can write any number of root values. With the root value separator
+ * removed the bytes of each value are the same as the ones of a fresh generator. This saves the generator, its
+ * IOContext and the recycling of its buffers on every call.
+ * 
+ * Only for JSON without indentation: binary generators write a header once per content and pretty printers write a
+ * separator between root values.
+ */
+final class ReusableGenerator {
+    private final Target out = new Target();
+    private final ByteBufferOutputStream bufferOut = new ByteBufferOutputStream(null);
+    private final JsonGenerator gen;
+    private final SlotPool<ReusableGenerator> pool;
+
+    ReusableGenerator(JsonFactory factory, SlotPool<ReusableGenerator> pool) throws IOException {
+        this.gen = factory.createGenerator(out, JsonEncoding.UTF8);
+        this.pool = pool;
+        gen.setRootValueSeparator(null);
+    }
+
+    static boolean isSupported(JsonFactory factory, ObjectWriter writer) {
+        return JsonFactory.FORMAT_NAME_JSON.equals(factory.getFormatName())
+                && !writer.isEnabled(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * Writes the value to the target. If this throws the generator is in an unknown state and must not be reused.
+     */
+    void write(ObjectWriter writer, Object value, OutputStream target) throws IOException {
+        out.target = target;
+        try {
+            writer.writeValue(gen, value);
+            gen.flush();
+        } finally {
+            out.target = null;
+        }
+    }
+
+    void write(ObjectWriter writer, Object value, ByteBuffer target) throws IOException {
+        bufferOut.setBuffer(target);
+        try {
+            write(writer, value, bufferOut);
+        } finally {
+            bufferOut.setBuffer(null);
+        }
+    }
+
+    /**
+     * Gives the generator back to the pool it was created for. Once the mapper changed that pool is no longer used.
+     */
+    void release() {
+        pool.offer(this);
+    }
+
+    private static final class Target extends OutputStream {
+        private OutputStream target;
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Bounded cache of the serialized form of models, keyed by (mapper, model class, id, version). Set on a mapper with
+ * {@link JacksonMapper#setSerializedFormCache(SerializedFormCache)}, the same cache can be shared by several mappers.
+ * The mappers are told apart by identity, not by name, since they may have different configurations.
+ * 
+ * Besides whole documents the {@link ModelSerializer} caches the fragments of the nested models and splices them into
+ * the parent documents, so a parent that changed still reuses the form of its unchanged children. Splicing is only
+ * done for JSON text without indentation.
+ * 
+ * NOTE: only models with both an id and a version and without nested models are cached. The version must change
+ * whenever the model changes, like it does for the optimistic locking, otherwise a stale form is served. A model
+ * containing other models is rendered each time(splicing in the cached forms of its children), otherwise a child that
+ * changed would be served stale inside the cached form of its unchanged parent.
+ * 
+ * Eviction is least recently used, per segment so that concurrent lookups do not all wait on the same lock.
+ */
+public class SerializedFormCache {
+    /**
+     * Writer attribute holding the {@link Binding} of the mapper, see {@link JacksonMapper#getWriter(Class, Class)}.
+     */
+    static final String WRITER_ATTRIBUTE = SerializedFormCache.class.getName();
+    // Approximate per entry overhead(key, map entry, array header) counted in the size.
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes The total size of the cached forms, approximately.
+     */
+    public SerializedFormCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+    }
+
+    /**
+     * The key of the model or null if it is not cached: no id, no version or nested models.
+     * 
+     * @param mapper The mapper writing the form, compared by identity.
+     * @param nested True for the form the model has as an attribute value of another model.
+     */
+    Key key(Object mapper, Model model, boolean nested) {
+        Map<String, Object> data = ModelAccess.data(model);
+        Object id = data.get(Model.KEY_ID);
+        Object version = data.get(Model.KEY_VERSION);
+        if (id == null || version == null || containsModel(data)) {
+            return null;
+        }
+        return new Key(mapper, model.getClass(), id, version, nested);
+    }
+
+    private static boolean containsModel(Map<String, Object> data) {
+        // The unparsed attributes of a lazy model are written back as read, they can not be stale.
+        Iterable<Map.Entry<String, Object>> entries = data instanceof LazyAttributeMap
+                ? ((LazyAttributeMap) data).rawEntrySet() : data.entrySet();
+        for (Map.Entry<String, Object> entry : entries) {
+            if (isOrContainsModel(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOrContainsModel(Object value) {
+        if (value instanceof Model) {
+            return true;
+        } else if (value instanceof Map) {
+            for (Object element : ((Map<?, ?>) value).values()) {
+                if (isOrContainsModel(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (isOrContainsModel(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (isOrContainsModel(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    Object get(Key key) {
+        Object form = segment(key).get(key);
+        if (form == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return form;
+    }
+
+    /**
+     * @param form The bytes of a document or the text of a fragment.
+     */
+    void put(Key key, Object form) {
+        segment(key).put(key, form);
+    }
+
+    private Segment segment(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The size of the cached forms, including an estimate of the overhead per entry.
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.count();
+        }
+        return count;
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * The cache as seen by one mapper, used by {@link ModelSerializer} for the nested models.
+     */
+    Binding bind(Object mapper, JsonFactory factory) {
+        return new Binding(this, mapper, factory);
+    }
+
+    @Override
+    public String toString() {
+        return "SerializedFormCache[count=" + getCount() + ", bytes=" + getSizeBytes() + "/" + maxBytes + ", hits="
+                + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    private static int weight(Object form) {
+        // Text fragments are mostly ASCII, i.e. about one byte per char.
+        return ENTRY_OVERHEAD + (form instanceof byte[] ? ((byte[]) form).length : ((String) form).length());
+    }
+
+    private final class Segment {
+        private final long maxBytes;
+        private final LinkedHashMap<Key, Object> forms = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+        private long size;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Object get(Key key) {
+            return forms.get(key);
+        }
+
+        synchronized void put(Key key, Object form) {
+            int weight = weight(form);
+            if (weight > maxBytes) {
+                return;
+            }
+            Object old = forms.put(key, form);
+            size += weight - (old == null ? 0 : weight(old));
+            Iterator<Object> it = forms.values().iterator();
+            while (size > maxBytes && it.hasNext()) {
+                size -= weight(it.next());
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            forms.clear();
+            size = 0;
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        synchronized int count() {
+            return forms.size();
+        }
+    }
+
+    static final class Key {
+        private final Object mapper;
+        private final Class<?> modelClass;
+        private final Object id;
+        private final Object version;
+        private final boolean nested;
+        private final int hash;
+
+        Key(Object mapper, Class<?> modelClass, Object id, Object version, boolean nested) {
+            this.mapper = mapper;
+            this.modelClass = modelClass;
+            this.id = id;
+            this.version = version;
+            this.nested = nested;
+            int h = System.identityHashCode(mapper);
+            h = 31 * h + modelClass.hashCode();
+            h = 31 * h + id.hashCode();
+            h = 31 * h + version.hashCode();
+            hash = 31 * h + (nested ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && nested == other.nested && modelClass == other.modelClass
+                    && mapper == other.mapper && id.equals(other.id) && version.equals(other.version);
+        }
+    }
+
+    /**
+     * The cache of one mapper. The fragments are rendered with a generator of the mapper's factory.
+     */
+    static final class Binding {
+        private final SerializedFormCache cache;
+        private final Object mapper;
+        private final JsonFactory factory;
+
+        Binding(SerializedFormCache cache, Object mapper, JsonFactory factory) {
+            this.cache = cache;
+            this.mapper = mapper;
+            this.factory = factory;
+        }
+
+        /**
+         * Writes the nested model from its cached fragment, rendering and caching the fragment first if missing.
+         * 
+         * @return False if the model can not be spliced(not cached, binary or indented output), nothing written.
+         */
+        boolean write(Model model, JsonSerializer<Model> ser, TypeSerializer typeSer, JsonGenerator gen,
+                SerializerProvider provider) throws IOException {
+            // Same condition as for the raw copy of the lazy attributes.
+            if (!(gen instanceof JsonGeneratorImpl) || gen.getPrettyPrinter() != null) {
+                return false;
+            }
+            Key key = cache.key(mapper, model, true);
+            if (key == null) {
+                return false;
+            }
+            String fragment = (String) cache.get(key);
+            if (fragment == null) {
+                fragment = render(model, ser, typeSer, (JsonGeneratorImpl) gen, provider);
+                cache.put(key, fragment);
+            }
+            gen.writeRawValue(fragment);
+            return true;
+        }
+
+        private String render(Model model, JsonSerializer<Model> ser, TypeSerializer typeSer, JsonGeneratorImpl gen,
+                SerializerProvider provider) throws IOException {
+            StringWriter out = new StringWriter();
+            try (JsonGenerator fragmentGen = factory.createGenerator(out)) {
+                // Written the same way as in the parent document.
+                fragmentGen.setCodec(gen.getCodec());
+                fragmentGen.overrideStdFeatures(gen.getFeatureMask(), -1);
+                fragmentGen.setCharacterEscapes(gen.getCharacterEscapes());
+                fragmentGen.setHighestNonEscapedChar(gen.getHighestEscapedChar());
+                if (typeSer != null) {
+                    ser.serializeWithType(model, fragmentGen, provider, typeSer);
+                } else {
+                    ser.serialize(model, fragmentGen, provider);
+                }
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size lock free pool: a fixed array of slots taken and filled with atomic swaps. Polling and offering allocate
+ * nothing and never block or pin a thread(unlike ThreadLocal caches, which also do not fit virtual or short lived
+ * threads). When empty/full the caller creates/drops the instances.
+ */
+final class SlotPool<T> {
+    private final AtomicReferenceArray<T> slots;
+
+    SlotPool(int size) {
+        slots = new AtomicReferenceArray<T>(size);
+    }
+
+    T poll() {
+        int size = slots.length();
+        int start = start(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) != null) {
+                T value = slots.getAndSet(slot, null);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    boolean offer(T value) {
+        int size = slots.length();
+        int start = start(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Spreads the threads over the slots to limit contention.
+    private static int start(int size) {
+        return (int) (Thread.currentThread().getId() % size);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class AsyncModelParserTest {
+    // Allows comments.
+    private static final JacksonMapper<Model> MAPPER = JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON);
+
+    /**
+     * Feeds the input in chunks of every size from 1 byte to the whole input and checks the values are the same.
+     */
+    private static void assertValues(String input, boolean arrayElements, Object... expected) throws Exception {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= bytes.length; chunk++) {
+            AsyncModelParser<Object> parser = MAPPER.newAsyncParser(Object.class, arrayElements);
+            for (int i = 0; i < bytes.length; i += chunk) {
+                parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+            }
+            parser.complete();
+            assertEquals("Chunks of " + chunk + " bytes", Arrays.asList(expected), drain(parser));
+        }
+    }
+
+    private static List<Object> drain(AsyncModelParser<Object> parser) throws Exception {
+        List<Object> values = new ArrayList<Object>();
+        for (Object value = parser.next().get(); value != null; value = parser.next().get()) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static void assertInvalid(String input, boolean arrayElements) throws Exception {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= bytes.length; chunk++) {
+            AsyncModelParser<Object> parser = MAPPER.newAsyncParser(Object.class, arrayElements);
+            for (int i = 0; i < bytes.length; i += chunk) {
+                parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+            }
+            parser.complete();
+            try {
+                drain(parser);
+                fail("Accepted " + input + " in chunks of " + chunk);
+            } catch (ExecutionException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void scalarsAndWhitespace() throws Exception {
+        assertValues("1 2\n3\r\n\t true \"s\"false", false, 1, 2, 3, true, "s", false);
+        assertValues("  -1.5e3  ", false, -1500.0);
+        assertValues("[1, 2 ,3,\"x\" ]", true, 1, 2, 3, "x");
+    }
+
+    @Test
+    public void commentsAfterScalars() throws Exception {
+        assertValues("1//c\n2", false, 1, 2);
+        assertValues("1/*c*/2 3/* } ] \" */ 4", false, 1, 2, 3, 4);
+        assertValues("1//c\r2", false, 1, 2);
+        assertValues("[1/*x*/,2//y\n]", true, 1, 2);
+        assertValues("/* a */ {\"a\":1/* } */} // b", false, Collections.singletonMap("a", 1));
+    }
+
+    @Test
+    public void splitStringsAndEscapes() throws Exception {
+        assertValues("\"a\\\"b\" \"\\\\\" \"\\u00e9\u00e9/*\"", false, "a\"b", "\\", "\u00e9\u00e9/*");
+        assertValues("{\"k\":\"} ] //\\\"\"}[\"[\"]", false, Collections.singletonMap("k", "} ] //\""),
+                Collections.singletonList("["));
+    }
+
+    @Test
+    public void models() throws Exception {
+        JacksonMapper<Model> typed = JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        Model model = new Model();
+        model.set("id", "1");
+        model.set("text", "{[\"/*");
+        byte[] one = typed.serializeAsBytes(model);
+        byte[] input = new byte[one.length * 2 + 1];
+        System.arraycopy(one, 0, input, 0, one.length);
+        input[one.length] = '\n';
+        System.arraycopy(one, 0, input, one.length + 1, one.length);
+        for (int chunk = 1; chunk <= input.length; chunk += 7) {
+            AsyncModelParser<Model> parser = typed.newAsyncParser(Model.class, false);
+            for (int i = 0; i < input.length; i += chunk) {
+                parser.feed(ByteBuffer.wrap(input, i, Math.min(chunk, input.length - i)));
+            }
+            parser.complete();
+            for (int i = 0; i < 2; i++) {
+                assertEquals("{[\"/*", parser.next().get().get("text"));
+            }
+            assertNull(parser.next().get());
+        }
+    }
+
+    @Test
+    public void invalidInput() throws Exception {
+        assertInvalid("1/2", false);
+        assertInvalid("/1", false);
+        assertInvalid("1 /", false);
+        assertInvalid("{\"a\":1", false);
+        assertInvalid("[1, 2", true);
+        assertInvalid("/* open", false);
+    }
+
+    @Test
+    public void backPressure() throws Exception {
+        AsyncModelParser<Object> parser = new AsyncModelParser<Object>(MAPPER.getReader(Object.class), false, 2);
+        assertTrue(parser.feed(ByteBuffer.wrap("1 ".getBytes(StandardCharsets.UTF_8))).isDone());
+        CompletableFuture<Void> room = parser.feed(ByteBuffer.wrap("2 3 ".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(room.isDone());
+        assertEquals(1, parser.next().get());
+        assertEquals(2, parser.next().get());
+        assertTrue(room.isDone());
+    }
+}
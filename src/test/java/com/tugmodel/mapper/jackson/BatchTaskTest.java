@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * Splitting, ordering and per element errors of the batch methods.
+ */
+public class BatchTaskTest {
+
+    private static List<Integer> range(int size) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void smallBatchOnCallerThread() {
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            Function<Integer, Integer> op = i -> {
+                threads.add(Thread.currentThread());
+                return i;
+            };
+            // Light in total.
+            BatchTask.map(pool, range(100), op, i -> 10);
+            // Heavy but a single worker.
+            BatchTask.map(single, range(10), op, i -> BatchTask.MIN_PARALLEL_WEIGHT);
+        } finally {
+            pool.shutdown();
+            single.shutdown();
+        }
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test(timeout = 60000)
+    public void heavyBatchIsSplit() {
+        // Each element waits for the other one, so they can only complete if mapped by two workers.
+        final CountDownLatch both = new CountDownLatch(2);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<MappingResult<Boolean>> results = BatchTask.map(pool, range(2), i -> {
+                both.countDown();
+                try {
+                    return both.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, i -> BatchTask.MIN_PARALLEL_WEIGHT);
+            assertTrue(results.get(0).getValue());
+            assertTrue(results.get(1).getValue());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void resultsInSourceOrder() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Uneven weights so that the halves by weight are not the halves by count. Not RandomAccess either.
+            List<Integer> sources = new LinkedList<Integer>(range(1000));
+            List<MappingResult<String>> results = BatchTask.map(pool, sources, i -> "v" + i,
+                    i -> i % 100 == 0 ? 10 * BatchTask.MIN_PARALLEL_WEIGHT : 100);
+            assertEquals(sources.size(), results.size());
+            for (int i = 0; i < sources.size(); i++) {
+                assertEquals(i, results.get(i).getIndex());
+                assertEquals("v" + i, results.get(i).getValue());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failureDoesNotAbortTheBatch() {
+        final IllegalArgumentException error = new IllegalArgumentException("bad 7");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<MappingResult<Integer>> results = BatchTask.map(pool, range(20), i -> {
+                if (i == 7) {
+                    throw error;
+                }
+                return i;
+            }, i -> BatchTask.MIN_PARALLEL_WEIGHT);
+            for (MappingResult<Integer> result : results) {
+                if (result.getIndex() == 7) {
+                    assertFalse(result.isSuccess());
+                    assertSame(error, result.getError());
+                    try {
+                        result.getValue();
+                        fail();
+                    } catch (IllegalArgumentException e) {
+                        assertSame(error, e);
+                    }
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertEquals(result.getIndex(), result.getValue().intValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void mapperBatches() {
+        JacksonMapper<Model> mapper = JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON);
+        List<MappingResult<Model>> models = mapper.deserializeAll(Arrays.asList("{\"id\":\"0\"}", "{\"id\":",
+                "{\"id\":\"2\"}"), Model.class);
+        assertEquals("0", models.get(0).getValue().get("id"));
+        assertFalse(models.get(1).isSuccess());
+        assertEquals("2", models.get(2).getValue().get("id"));
+
+        // Heavy enough to be split.
+        List<Model> sources = new ArrayList<Model>();
+        for (int i = 0; i < 100; i++) {
+            Model model = new Model();
+            model.set("id", String.valueOf(i));
+            sources.add(model);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<MappingResult<Object>> serialized = mapper.serializeAll(sources, pool);
+            for (int i = 0; i < sources.size(); i++) {
+                assertEquals(String.valueOf(i), mapper.deserialize(serialized.get(i).getValue()).get("id"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class CompactStorageTest {
+
+    static CompactAttributeMap map(String... keys) {
+        return map(new ModelShapes(), keys);
+    }
+
+    static CompactAttributeMap map(ModelShapes shapes, String... keys) {
+        CompactAttributeMap map = new CompactAttributeMap(shapes.forClass(Model.class));
+        for (String key : keys) {
+            map.put(key, key.toUpperCase());
+        }
+        return map;
+    }
+
+    @Test
+    public void mapContract() {
+        CompactAttributeMap map = map();
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        assertTrue(map.isEmpty());
+        for (String key : new String[] {"id", "a", "b", "c"}) {
+            assertNull(map.put(key, key + "1"));
+            expected.put(key, key + "1");
+        }
+        assertEquals("a1", map.put("a", "a2"));
+        expected.put("a", "a2");
+        // A null value is present.
+        assertEquals("b1", map.put("b", null));
+        expected.put("b", null);
+        assertTrue(map.containsKey("b"));
+        assertNull(map.get("b"));
+        assertFalse(map.containsKey("version"));
+        assertFalse(map.containsKey("missing"));
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(4, map.size());
+
+        assertEquals("c1", map.remove("c"));
+        assertNull(map.remove("c"));
+        expected.remove("c");
+        assertEquals(expected, map);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("a"));
+    }
+
+    @Test
+    public void overflowBeyondMaxKeys() {
+        CompactAttributeMap map = map();
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < ModelShape.MAX_KEYS + 10; i++) {
+            map.put("k" + i, i);
+            expected.put("k" + i, i);
+        }
+        assertEquals(ModelShape.MAX_KEYS, map.getShape().size());
+        assertEquals(expected, map);
+        assertEquals(ModelShape.MAX_KEYS + 5, map.remove("k" + (ModelShape.MAX_KEYS + 5)));
+        assertEquals(ModelShape.MAX_KEYS + 9, map.size());
+    }
+
+    @Test
+    public void iteratorRemove() {
+        CompactAttributeMap map = map();
+        for (int i = 0; i < ModelShape.MAX_KEYS + 4; i++) {
+            map.put("k" + i, i);
+        }
+        for (Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext();) {
+            // Removes from both the slots and the overflow.
+            if (((Integer) it.next().getValue()) % 2 == 0) {
+                it.remove();
+                try {
+                    it.remove();
+                    fail("Removed twice");
+                } catch (IllegalStateException e) {
+                    // Expected.
+                }
+            }
+        }
+        assertEquals((ModelShape.MAX_KEYS + 4) / 2, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            assertEquals(1, ((Integer) entry.getValue()) % 2);
+            entry.setValue("x");
+        }
+        assertEquals("x", map.get("k1"));
+    }
+
+    @Test
+    public void iterationInShapeOrder() {
+        CompactAttributeMap map = map("a", "b", "id");
+        assertEquals(Arrays.asList("id", "a", "b"), Arrays.asList(map.keySet().toArray()));
+        map.remove("a");
+        map.put("a", "A");
+        // Keeps its slot, unlike a LinkedHashMap.
+        assertEquals(Arrays.asList("id", "a", "b"), Arrays.asList(map.keySet().toArray()));
+    }
+
+    @Test
+    public void sameKeysShareShape() {
+        ModelShapes shapes = new ModelShapes();
+        assertSame(map(shapes, "a", "b").getShape(), map(shapes, "a", "b").getShape());
+        assertNotSame(map(shapes, "a", "b").getShape(), map(shapes, "b", "a").getShape());
+        // The transitions of a shape are bounded, the other keys go to the overflow.
+        CompactAttributeMap first = map(shapes);
+        for (int i = 0; i < ModelShape.MAX_TRANSITIONS; i++) {
+            map(shapes, "generated" + i);
+        }
+        first.put("another", 1);
+        assertEquals(2, first.getShape().size());
+        assertEquals(1, first.get("another"));
+    }
+
+    @Test
+    public void metaShapeAndEviction() {
+        ModelShapes shapes = new ModelShapes();
+        shapes.register(Model.class, Arrays.asList("name", "size"));
+        assertEquals(4, shapes.forClass(Model.class).size());
+        assertEquals("name", shapes.forClass(Model.class).keyAt(2));
+        shapes.evict(MixinsGeneratorTest.meta("model", Model.class));
+        assertEquals(2, shapes.forClass(Model.class).size());
+    }
+
+    @Test
+    public void heterogeneousModelsKeepOwnShape() {
+        JacksonMapper<Model> mapper = SerializedFormCacheTest.flatMapper();
+        mapper.setCompactStorage(true);
+        Model first = mapper.deserialize("{\"id\":\"1\",\"a\":1,\"b\":2,\"c\":3}", Model.class);
+        Model second = mapper.deserialize("{\"id\":\"2\",\"d\":4}", Model.class);
+        Map<String, Object> data = ModelAccess.data(second);
+        assertTrue(data instanceof CompactAttributeMap);
+        // Not grown to the keys of the first model.
+        assertEquals(Arrays.asList("id", "version", "d"), keys(((CompactAttributeMap) data).getShape()));
+        assertEquals(4, ((Number) second.get("d")).intValue());
+        assertEquals(3, ((Number) first.get("c")).intValue());
+        assertEquals(mapper.serialize(first), mapper.serialize(mapper.deserialize(mapper.serialize(first),
+                Model.class)));
+    }
+
+    private static List<String> keys(ModelShape shape) {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < shape.size(); i++) {
+            keys.add(shape.keyAt(i));
+        }
+        return keys;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void compactStorageNeedsModelModule() {
+        RegisterMetaTest.mapper().setCompactStorage(true);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.tugmodel.client.model.Model;
+
+public class ConfigFileLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Model model(Object... keyValues) {
+        Model model = new Model();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            model.set((String) keyValues[i], keyValues[i + 1]);
+        }
+        return model;
+    }
+
+    @Test
+    public void reloadPublishesNewMaps() throws Exception {
+        // Typed so that the child is read back as a model.
+        JacksonMapper<Model> mapper = JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("k", 1);
+        map.put("stale", 2);
+        Path file = write(folder.newFile("a.json").toPath(), mapper.serialize(
+                model("id", "a", "old", 1, "child", model("x", 1, "gone", true), "map", map)).toString());
+        ConfigFileLoader loader = new ConfigFileLoader(mapper);
+        Model model = loader.load(file);
+        Model child = model.get("child");
+        Map<String, Object> before = ModelAccess.data(model);
+        Map<String, Object> childBefore = ModelAccess.data(child);
+
+        map.remove("stale");
+        write(file, mapper.serialize(model("id", "a", "child", model("x", 2), "map", map)).toString());
+        assertTrue(loader.reload(file));
+
+        assertSame(model, loader.get(file));
+        assertSame(child, model.get("child"));
+        assertNull(model.get("old"));
+        assertEquals(2, (int) child.get("x"));
+        assertFalse(ModelAccess.data(child).containsKey("gone"));
+        assertFalse(((Map<?, ?>) model.get("map")).containsKey("stale"));
+        // The maps readers may hold were not changed.
+        assertEquals(1, before.get("old"));
+        assertEquals(1, childBefore.get("x"));
+        assertFalse(loader.reload(file));
+    }
+
+    @Test
+    public void reloadErrors() throws Exception {
+        Path file = write(folder.newFile("b.json").toPath(), "{\"id\":\"b\"}");
+        ConfigFileLoader loader = new ConfigFileLoader();
+        Model model = loader.load(file);
+        write(file, "{\"id\":");
+        try {
+            loader.reload(file);
+            fail("Not reported");
+        } catch (RuntimeException e) {
+            // No listener, thrown as reported by the mapper, not wrapped again.
+            assertTrue(e.getMessage(), e.getMessage().contains("In file " + file));
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof JsonProcessingException);
+        }
+        final List<Exception> errors = new ArrayList<Exception>();
+        loader.addListener(new ConfigFileLoader.Listener() {
+            @Override
+            public void onReload(Path path, Model reloaded) {
+            }
+
+            @Override
+            public void onError(Path path, Exception e) {
+                errors.add(e);
+            }
+        });
+        assertFalse(loader.reload(file));
+        assertEquals(1, errors.size());
+        assertEquals("b", model.get("id"));
+    }
+}
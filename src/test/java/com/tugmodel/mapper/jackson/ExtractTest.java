@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class ExtractTest {
+
+    static Model model() {
+        Map<String, Object> payload = new LinkedHashMap<String, Object>();
+        payload.put("data", Collections.singletonMap("x", 1));
+        Model child = new Model();
+        child.set("x", 3);
+        Model model = new Model();
+        model.set("id", "m");
+        model.set("payload", payload);
+        model.set("child", child);
+        return model;
+    }
+
+    @Test
+    public void dataOfMapAttributeNotLookedThrough() {
+        // Typed(data layout), config and ModelModule(flat) layouts.
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            Object src = mapper.serialize(model());
+            Map<String, Object> found = mapper.extractAll(src, "/payload/x", "/payload/data/x", "/child/x", "/id");
+            assertFalse(mapper.getName() + " " + found, found.containsKey("/payload/x"));
+            assertEquals(mapper.getName(), 1, ((Number) found.get("/payload/data/x")).intValue());
+            assertEquals(mapper.getName(), 3, ((Number) found.get("/child/x")).intValue());
+            assertEquals(mapper.getName(), "m", found.get("/id"));
+        }
+    }
+
+    @Test
+    public void singlePointer() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            Object src = mapper.serialize(model());
+            assertEquals(mapper.getName(), null, mapper.extract(src, "/payload/x"));
+            assertEquals(mapper.getName(), 3, ((Number) mapper.extract(src, "/child/x")).intValue());
+        }
+    }
+}
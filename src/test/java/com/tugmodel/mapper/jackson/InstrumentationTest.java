@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.tugmodel.client.model.Model;
+import com.tugmodel.mapper.jackson.AggregatingInstrumentation.Stats;
+import com.tugmodel.mapper.jackson.MapperInstrumentation.Operation;
+
+/**
+ * The {@link MapperInstrumentation} hooks of the mapper and the {@link AggregatingInstrumentation} statistics.
+ */
+public class InstrumentationTest {
+
+    /**
+     * Keeps the calls as "onSuccess DESERIALIZE Model 11 -1" or "onError DESERIALIZE Model JsonParseException".
+     */
+    static class Recording implements MapperInstrumentation {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void onSuccess(String mapper, Operation operation, Class<?> type, long nanos, long sizeIn,
+                long sizeOut) {
+            assertTrue(nanos >= 0);
+            calls.add("onSuccess " + operation + " " + type.getSimpleName() + " " + sizeIn + " " + sizeOut);
+        }
+
+        public void onError(String mapper, Operation operation, Class<?> type, long nanos, Throwable cause) {
+            assertTrue(nanos >= 0);
+            calls.add("onError " + operation + " " + type.getSimpleName() + " " + cause.getClass().getSimpleName());
+        }
+    }
+
+    private static JacksonMapper<Model> mapper(MapperInstrumentation instrumentation) {
+        JacksonMapper<Model> mapper = JacksonMappers.configurableCopy(
+                JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON));
+        mapper.setInstrumentation(instrumentation);
+        return mapper;
+    }
+
+    @Test
+    public void hooksOnSuccessAndError() {
+        Recording recording = new Recording();
+        JacksonMapper<Model> mapper = mapper(recording);
+        String json = "{\"id\":\"1\"}";
+        Model model = mapper.deserialize(json);
+        byte[] bytes = mapper.serializeAsBytes(model);
+        assertEquals("onSuccess DESERIALIZE Model " + json.length() + " -1", recording.calls.get(0));
+        assertEquals("onSuccess SERIALIZE Model -1 " + bytes.length, recording.calls.get(1));
+
+        try {
+            mapper.deserialize("{\"id\":");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof JsonProcessingException);
+        }
+        assertEquals(3, recording.calls.size());
+        assertTrue(recording.calls.get(2), recording.calls.get(2).startsWith("onError DESERIALIZE Model Json"));
+
+        // Not even called when disabled.
+        recording.enabled = false;
+        mapper.deserialize(json);
+        try {
+            mapper.deserialize("{\"id\":");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(3, recording.calls.size());
+        }
+    }
+
+    @Test
+    public void aggregatesPerMapperOperationAndType() {
+        AggregatingInstrumentation aggregating = new AggregatingInstrumentation();
+        JacksonMapper<Model> mapper = mapper(aggregating);
+        String json = "{\"id\":\"1\"}";
+        mapper.deserialize(json);
+        mapper.deserialize(json);
+        try {
+            mapper.deserialize("[");
+            fail();
+        } catch (RuntimeException e) {
+            // Counted below.
+        }
+        Object serialized = mapper.serialize(new Model());
+        assertEquals(aggregating.toString(), 2, aggregating.getStats().size());
+        for (Stats stats : aggregating.getStats()) {
+            assertEquals(mapper.getName(), stats.getKey().getMapper());
+            assertSame(Model.class, stats.getKey().getType());
+            if (stats.getKey().getOperation() == Operation.DESERIALIZE) {
+                assertEquals(3, stats.getCount());
+                assertEquals(1, stats.getErrorCount());
+                // The size of the failed call is not known.
+                assertEquals(2 * json.length(), stats.getSizeIn());
+            } else {
+                assertEquals(1, stats.getCount());
+                assertEquals(0, stats.getErrorCount());
+                assertEquals(serialized.toString().length(), stats.getSizeOut());
+            }
+        }
+        aggregating.reset();
+        assertTrue(aggregating.getStats().isEmpty());
+    }
+
+    @Test
+    public void statistics() {
+        AggregatingInstrumentation aggregating = new AggregatingInstrumentation();
+        aggregating.onSuccess("a", Operation.SERIALIZE, Model.class, 100, 10, 20);
+        aggregating.onSuccess("a", Operation.SERIALIZE, Model.class, 300, MapperInstrumentation.UNKNOWN_SIZE, 5);
+        aggregating.onError("a", Operation.SERIALIZE, Model.class, 200, new IllegalStateException());
+        aggregating.onError("a", Operation.SERIALIZE, Model.class, 200, new IllegalStateException());
+        aggregating.onError("a", Operation.SERIALIZE, Model.class, 200, new IllegalArgumentException());
+        aggregating.onSuccess("b", Operation.SERIALIZE, Model.class, 10000, 1, 1);
+        aggregating.onSuccess("a", Operation.CONVERT, null, 1, 1, 1);
+
+        List<Stats> slowest = aggregating.getSlowest(2);
+        assertEquals(2, slowest.size());
+        assertEquals("b", slowest.get(0).getKey().getMapper());
+        Stats a = slowest.get(1);
+        assertEquals(Operation.SERIALIZE, a.getKey().getOperation());
+        assertEquals(5, a.getCount());
+        assertEquals(200d, a.getMeanNanos(), 0d);
+        assertEquals(10, a.getSizeIn());
+        assertEquals(25, a.getSizeOut());
+        assertEquals(3, a.getErrorCount());
+        Map<String, Long> errors = a.getErrors();
+        assertEquals(Long.valueOf(2), errors.get(IllegalStateException.class.getName()));
+        assertEquals(Long.valueOf(1), errors.get(IllegalArgumentException.class.getName()));
+        assertEquals(3, aggregating.getSlowest(10).size());
+    }
+
+    @Test
+    public void histogramBuckets() {
+        AggregatingInstrumentation.Histogram histogram = new AggregatingInstrumentation.Histogram();
+        assertEquals(0, histogram.percentile(50));
+        // Buckets [0], [1], [2, 4), [4, 8) and [512, 1024).
+        for (long nanos : new long[] { -5, 1, 2, 3, 4, 1000 }) {
+            histogram.record(nanos);
+        }
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(0, histogram.percentile(10));
+        assertEquals(1, histogram.percentile(30));
+        assertEquals(3, histogram.percentile(50));
+        assertEquals(7, histogram.percentile(80));
+        assertEquals(1023, histogram.percentile(90));
+        assertEquals(1023, histogram.percentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        // Powers of 2 start the next bucket.
+        histogram = new AggregatingInstrumentation.Histogram();
+        histogram.record(1024);
+        assertEquals(2047, histogram.percentile(50));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+/**
+ * Round trip of every wire format through every flavour.
+ */
+public class JacksonFormatTest {
+
+    private static Model model() {
+        Model model = new Model();
+        model.set("id", "1");
+        model.set("name", "n");
+        model.set("tags", Arrays.asList("a", "b"));
+        return model;
+    }
+
+    static List<JacksonMapper<Model>> mappers(JacksonFormat format) {
+        return Arrays.asList(JacksonMappers.getConfigReaderMapper(format), JacksonMappers.getTypedMapper(format),
+                JacksonMappers.getCompactTypedMapper(format));
+    }
+
+    @Test
+    public void formatOfFactory() {
+        for (JacksonFormat format : JacksonFormat.values()) {
+            assertEquals(format, JacksonFormat.of(format.createFactory()));
+            for (JacksonMapper<Model> mapper : mappers(format)) {
+                assertEquals(format, mapper.getFormat());
+                assertEquals(format.isBinary(), mapper.isBinaryFormat());
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        for (JacksonFormat format : JacksonFormat.values()) {
+            for (JacksonMapper<Model> mapper : mappers(format)) {
+                String msg = mapper.getName();
+                Object serialized = mapper.serialize(model());
+                assertEquals(msg, format.isBinary(), serialized instanceof byte[]);
+                Model result = mapper.deserialize(serialized);
+                assertEquals(msg, "1", result.get("id"));
+                assertEquals(msg, "n", result.get("name"));
+                assertEquals(msg, Arrays.asList("a", "b"), result.get("tags"));
+
+                Map<?, ?> map = mapper.deserialize(mapper.serialize((Object) model().extraFields()), Map.class);
+                assertEquals(msg, "n", map.get("name"));
+                assertEquals(msg, "n", mapper.convert(model().extraFields(), Map.class).get("name"));
+            }
+        }
+    }
+
+    @Test
+    public void batchRoundTrip() {
+        for (JacksonFormat format : JacksonFormat.values()) {
+            for (JacksonMapper<Model> mapper : mappers(format)) {
+                List<MappingResult<Object>> serialized = mapper.serializeAll(Arrays.asList(model(), model()));
+                Object[] payloads = new Object[serialized.size()];
+                for (int i = 0; i < payloads.length; i++) {
+                    assertTrue(mapper.getName(), serialized.get(i).isSuccess());
+                    payloads[i] = serialized.get(i).getValue();
+                }
+                for (MappingResult<Model> result : mapper.deserializeAll(Arrays.asList(payloads))) {
+                    assertEquals(mapper.getName(), "n", result.getValue().get("name"));
+                }
+            }
+        }
+    }
+}
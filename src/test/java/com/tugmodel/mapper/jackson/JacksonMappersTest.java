@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+
+/**
+ * The shared mappers can not be reconfigured, their configurable copies can.
+ */
+public class JacksonMappersTest {
+
+    @Test
+    public void sharedMappersAreFrozen() {
+        for (JacksonMapper<Model> mapper : JacksonFormatTest.mappers(JacksonFormat.JSON)) {
+            assertTrue(mapper.getName(), mapper.isFrozen());
+            try {
+                mapper.setInstrumentation(new AggregatingInstrumentation());
+                fail(mapper.getName());
+            } catch (UnsupportedOperationException e) {
+                assertSame(MapperInstrumentation.NOOP, mapper.getInstrumentation());
+            }
+            try {
+                mapper.setSerializedFormCache(new SerializedFormCache(1024));
+                fail(mapper.getName());
+            } catch (UnsupportedOperationException e) {
+                assertEquals(null, mapper.getSerializedFormCache());
+            }
+            try {
+                mapper.setCompactStorage(true);
+                fail(mapper.getName());
+            } catch (UnsupportedOperationException e) {
+                assertFalse(mapper.isCompactStorage());
+            }
+            ObjectMapper objectMapper = mapper.getMapper();
+            try {
+                mapper.setMapper(new ObjectMapper());
+                fail(mapper.getName());
+            } catch (UnsupportedOperationException e) {
+                assertSame(objectMapper, mapper.getMapper());
+            }
+        }
+        assertTrue(((JacksonMapper<?>) JacksonMappers.getPrettyPrintMapper()).isFrozen());
+    }
+
+    @Test
+    public void configurableCopy() {
+        JacksonMapper<Model> shared = JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        JacksonMapper<Model> copy = JacksonMappers.configurableCopy(shared);
+        assertFalse(copy.isFrozen());
+        assertEquals(shared.getName(), copy.getName());
+        assertNotSame(shared.getMapper(), copy.getMapper());
+
+        AggregatingInstrumentation instrumentation = new AggregatingInstrumentation();
+        copy.setInstrumentation(instrumentation);
+        assertSame(MapperInstrumentation.NOOP, shared.getInstrumentation());
+
+        Model model = new Model();
+        model.set("id", "1");
+        assertEquals(shared.serialize(model), copy.serialize(model));
+        assertEquals("1", copy.deserialize(copy.serialize(model)).get("id"));
+    }
+
+    @Test
+    public void compactTypedCopySharesTheTypeIds() {
+        JacksonMapper<Model> copy = JacksonMappers.configurableCopy(JacksonMappers.getCompactTypedMapper());
+        assertSame(JacksonMappers.getMetaTypeIds(), copy.getMetaTypeIds());
+    }
+}
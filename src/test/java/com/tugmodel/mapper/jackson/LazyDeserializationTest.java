@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+
+public class LazyDeserializationTest {
+    private static final String FIRST = "{\"id\":\"1\",\"child\":{\"name\":\"AAA\",\"more\":{\"x\":[1]}}}";
+    private static final String SECOND = "{\"id\":\"2\",\"child\":{\"name\":\"BBB\",\"more\":{\"x\":[2]}}}";
+
+    static JacksonMapper<Model> mapper() {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ModelModule());
+        return new JacksonMapper<Model>() {
+            @Override
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+        };
+    }
+
+    private static void assertSecond(Model model) {
+        Map<String, Object> child = model.get("child");
+        assertEquals("BBB", child.get("name"));
+        Map<String, Object> more = (Map<String, Object>) child.get("more");
+        assertEquals(Collections.singletonList(2), (List<?>) more.get("x"));
+    }
+
+    @Test
+    public void sliceOfByteBuffer() {
+        JacksonMapper<Model> mapper = mapper();
+        byte[] both = (FIRST + SECOND).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer slice = ByteBuffer.wrap(both, FIRST.length(), SECOND.length()).slice();
+        assertSecond(mapper.deserialize(slice));
+        assertSecond(mapper.deserializeLazy(slice));
+        // Same through the position of a buffer that is not a slice.
+        ByteBuffer positioned = ByteBuffer.wrap(both);
+        positioned.position(FIRST.length());
+        assertSecond(mapper.deserializeLazy(positioned));
+        assertEquals(FIRST.length(), positioned.position());
+    }
+
+    @Test
+    public void nestedLazyModels() {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ModelModule());
+        objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        JacksonMapper<Model> mapper = new JacksonMapper<Model>() {
+            @Override
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+        };
+        Model inner = new Model();
+        inner.set("name", "in");
+        inner.set("list", Collections.singletonList("v"));
+        Model outer = new Model();
+        outer.set("id", "o");
+        outer.set("inner", inner);
+        byte[] serialized = mapper.serializeAsBytes(outer);
+        byte[] padded = new byte[serialized.length + 7];
+        System.arraycopy(serialized, 0, padded, 7, serialized.length);
+
+        Model lazy = mapper.deserializeLazy(ByteBuffer.wrap(padded, 7, serialized.length).slice());
+        Model materialized = lazy.get("inner");
+        assertEquals("in", materialized.get("name"));
+        // The attributes of the nested model are themselves ranges of the same array.
+        assertEquals(Collections.singletonList("v"), materialized.get("list"));
+        assertEquals(new String(serialized, StandardCharsets.UTF_8), mapper.serialize(lazy));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class MergePatchTest {
+
+    public static class Child extends Model {
+    }
+
+    static Model withChild(Object child) {
+        Model model = new Model();
+        model.set("id", "m");
+        model.set("name", "a");
+        model.set("x", child);
+        return model;
+    }
+
+    static Model child(Model child) {
+        child.set("p", 1);
+        child.set("q", 2);
+        return child;
+    }
+
+    static Map<String, Object> map(String key, Object value) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put(key, value);
+        return map;
+    }
+
+    @Test
+    public void nestedChangesAndRemovals() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            Model source = withChild(child(new Model()));
+            Model replica = withChild(child(new Model()));
+            ModelSnapshot snapshot = mapper.snapshot(source);
+            ((Model) source.get("x")).set("p", 3);
+            ((Model) source.get("x")).set("q", null);
+            source.set("name", null);
+            source.set("added", "b");
+
+            Object delta = mapper.serializeDelta(snapshot, source);
+            mapper.updateModel(delta, replica, JacksonMapper.MergeMode.PATCH);
+            assertFalse(mapper.getName(), replica.extraFields().containsKey("name"));
+            assertEquals(mapper.getName(), "b", replica.get("added"));
+            Map<String, Object> x = ModelSnapshot.attributes(replica.get("x"));
+            assertEquals(mapper.getName(), 3, ((Number) x.get("p")).intValue());
+            assertFalse(mapper.getName(), x.containsKey("q"));
+        }
+    }
+
+    @Test
+    public void modelReplacedByMapRemovesAttributes() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            Model source = withChild(child(new Child()));
+            Model replica = withChild(child(new Child()));
+            ModelSnapshot snapshot = mapper.snapshot(source);
+            source.set("x", map("p", 1));
+
+            Object delta = mapper.serializeDelta(snapshot, source);
+            mapper.updateModel(delta, replica, JacksonMapper.MergeMode.PATCH);
+            Map<String, Object> x = ModelSnapshot.attributes(replica.get("x"));
+            assertEquals(mapper.getName(), 1, ((Number) x.get("p")).intValue());
+            assertFalse(mapper.getName() + " kept " + x, x.containsKey("q"));
+
+            // Same result when applied in memory.
+            replica = withChild(child(new Child()));
+            mapper.updateModel(mapper.diff(snapshot, source), replica, JacksonMapper.MergeMode.PATCH);
+            assertFalse(mapper.getName(), ModelSnapshot.attributes(replica.get("x")).containsKey("q"));
+        }
+    }
+
+    @Test
+    public void modelClassChangeRemovesAttributes() {
+        Model before = withChild(child(new Child()));
+        Model after = withChild(new Model());
+        ((Model) after.get("x")).set("p", 1);
+        MergePatch patch = JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON).diff(before, after);
+        assertEquals(1, patch.entries().size());
+        // A nested patch removing q, not a replacing value.
+        MergePatch nested = (MergePatch) patch.entries().iterator().next().getValue();
+        assertEquals("MergePatch{q=null}", nested.toString());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class MetaTypeIdResolverTest {
+
+    public static class Part extends Model {
+    }
+
+    public static class SpecialPart extends Part {
+    }
+
+    @Test
+    public void evictedIdRejectedAfterUse() {
+        JacksonMapper<Model> json = JacksonMappers.getCompactTypedMapper();
+        JacksonMapper<Model> smile = JacksonMappers.getCompactTypedMapper(JacksonFormat.SMILE);
+        MixinsGenerator generator = new MixinsGenerator("EvictIdTest");
+        json.registerMeta(generator, MixinsGeneratorTest.meta("evictedPart", Part.class));
+        assertSame(json.getMetaTypeIds(), JacksonMappers.getMetaTypeIds());
+
+        Part part = new Part();
+        part.set("id", "p");
+        Object text = json.serialize(Collections.singletonMap("part", part));
+        Object binary = smile.serialize(Collections.singletonMap("part", part));
+        // Resolves the id once so that the deserializers keep it.
+        assertEquals(Part.class, json.deserialize(text, Map.class).get("part").getClass());
+        assertEquals(Part.class, smile.deserialize(binary, Map.class).get("part").getClass());
+
+        json.evictMeta(generator, MixinsGeneratorTest.meta("evictedPart", Part.class));
+        assertRejected(json, text);
+        // Shares the resolver, so it must forget the id too.
+        assertRejected(smile, binary);
+    }
+
+    private static void assertRejected(JacksonMapper<Model> mapper, Object src) {
+        try {
+            mapper.deserialize(src, Map.class);
+            fail("Evicted id accepted by " + mapper.getName());
+        } catch (RuntimeException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void builtInAliasesReserved() {
+        MetaTypeIdResolver resolver = new MetaTypeIdResolver();
+        for (String id : new String[] {"map", "list", "date", "Model"}) {
+            try {
+                resolver.register(MixinsGeneratorTest.meta(id, Part.class));
+                fail("Registered " + id);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+            try {
+                resolver.evict(MixinsGeneratorTest.meta(id, Part.class));
+                fail("Evicted " + id);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        assertEquals("map", resolver.idFromValue(Collections.emptyMap()));
+        assertEquals("Model", resolver.idFromValue(new Model()));
+    }
+
+    @Test
+    public void unregisteredClassUsesNearestRegisteredSuperclass() {
+        MetaTypeIdResolver resolver = new MetaTypeIdResolver();
+        assertEquals("date", resolver.idFromValue(new Timestamp(0)));
+        assertEquals("Model", resolver.idFromValue(new SpecialPart()));
+        resolver.register(MixinsGeneratorTest.meta("part", Part.class));
+        assertEquals("part", resolver.idFromValue(new SpecialPart()));
+        resolver.evict(MixinsGeneratorTest.meta("part", Part.class));
+        assertEquals("Model", resolver.idFromValue(new SpecialPart()));
+        assertEquals(Thread.class.getName(), resolver.idFromValue(new Thread()));
+
+        JacksonMapper<Model> mapper = JacksonMappers.getCompactTypedMapper();
+        Object text = mapper.serialize(Collections.singletonMap("at", new Timestamp(1000)));
+        assertEquals(new Date(1000), mapper.deserialize(text, Map.class).get("at"));
+    }
+
+    @Test
+    public void evictFallsBackToRemainingAlias() {
+        MetaTypeIdResolver resolver = new MetaTypeIdResolver();
+        resolver.register(MixinsGeneratorTest.meta("part", Part.class));
+        resolver.register(MixinsGeneratorTest.meta("partAlias", Part.class));
+        assertEquals("part", resolver.idFromValue(new Part()));
+        resolver.evict(MixinsGeneratorTest.meta("part", Part.class));
+        assertEquals("partAlias", resolver.idFromValue(new Part()));
+    }
+
+    @Test
+    public void evictedIdAliasRoundTrip() {
+        JacksonMapper<Model> mapper = JacksonMappers.getCompactTypedMapper();
+        MixinsGenerator generator = new MixinsGenerator("AliasTest");
+        mapper.registerMeta(generator, MixinsGeneratorTest.meta("aliasedPart", SpecialPart.class));
+        mapper.registerMeta(generator, MixinsGeneratorTest.meta("aliasedPart2", SpecialPart.class));
+        mapper.evictMeta(generator, MixinsGeneratorTest.meta("aliasedPart", SpecialPart.class));
+        Object text = mapper.serialize(Collections.singletonMap("part", new SpecialPart()));
+        assertEquals(SpecialPart.class, mapper.deserialize(text, Map.class).get("part").getClass());
+        mapper.evictMeta(generator, MixinsGeneratorTest.meta("aliasedPart2", SpecialPart.class));
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentMetaChangesOnSharedResolver() throws Exception {
+        final JacksonMapper<Model> json = JacksonMappers.getCompactTypedMapper();
+        final JacksonMapper<Model> smile = JacksonMappers.getCompactTypedMapper(JacksonFormat.SMILE);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final JacksonMapper<Model> mapper = i == 0 ? json : smile;
+            final String id = "concurrentPart" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        MixinsGenerator generator = new MixinsGenerator("Concurrent" + id);
+                        start.await();
+                        for (int n = 0; n < 200; n++) {
+                            mapper.registerMeta(generator, MixinsGeneratorTest.meta(id, Part.class));
+                            mapper.evictMeta(generator, MixinsGeneratorTest.meta(id, Part.class));
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            // A deadlock fails through the timeout without keeping the JVM alive.
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+}
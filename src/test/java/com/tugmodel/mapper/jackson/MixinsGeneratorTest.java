@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tugmodel.client.model.Model;
+import com.tugmodel.client.model.meta.Meta;
+
+public class MixinsGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class Cached extends Model {
+    }
+
+    static Meta meta(String id, final Class<? extends Model> modelClass) {
+        Meta meta = new Meta() {
+            @Override
+            public Class modelClass() {
+                return modelClass;
+            }
+        };
+        meta.set("id", id);
+        return meta;
+    }
+
+    @Test
+    public void cacheKeyedByClassNameAndVersion() throws Exception {
+        File dir = folder.getRoot();
+        MixinsGenerator generator = new MixinsGenerator("CacheTest");
+        generator.setCacheDirectory(dir);
+        Meta meta = meta("Cached", Cached.class);
+        String className = generator.getMixinClassName(meta);
+        // Left by older versions, to be deleted. The mixin of another meta must be kept.
+        Files.write(new File(dir, className + "-0123456789abcdef.class").toPath(), new byte[1]);
+        Files.write(new File(dir, className + "-v0.class").toPath(), new byte[1]);
+        Files.write(new File(dir, className + "-x-v0.class").toPath(), new byte[1]);
+
+        generator.loadModelMixin(meta);
+        String[] files = dir.list();
+        Arrays.sort(files);
+        assertArrayEquals(new String[] { MixinsGenerator.cacheFileName(className), className + "-x-v0.class" }, files);
+
+        // An edited meta reuses the same file.
+        meta.set("description", "changed");
+        MixinsGenerator restarted = new MixinsGenerator("CacheTest");
+        restarted.setCacheDirectory(dir);
+        assertEquals(className, restarted.loadModelMixin(meta).getName());
+        assertEquals(2, dir.list().length);
+    }
+}
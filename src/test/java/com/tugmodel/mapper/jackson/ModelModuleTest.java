@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+
+/**
+ * Round trips through {@link ModelSerializer} and {@link ModelDeserializer} compared with the mixins they replace.
+ */
+public class ModelModuleTest {
+
+    public static class Child extends Model {
+    }
+
+    private static Model model() {
+        Model child = new Child();
+        child.set("id", "c");
+        Model model = new Child();
+        // Not in the "id", "version" order on purpose.
+        model.set("name", "n");
+        model.set("version", 2);
+        model.set("id", "1");
+        model.set("tags", new HashSet<String>(Arrays.asList("a")));
+        model.set("child", child);
+        model.set("big", 5L);
+        return model;
+    }
+
+    private static JsonNode tree(Object serialized) throws Exception {
+        return new ObjectMapper().readTree(serialized.toString());
+    }
+
+    @Test
+    public void flatLayoutLikeTheAnyGetter() throws Exception {
+        JacksonMapper<Model> mixins = JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON);
+        JacksonMapper<Model> module = ProjectionTest.withModelModule(mixins);
+        assertEquals(tree(mixins.serialize(model())), tree(module.serialize(model())));
+
+        Model result = module.deserialize(module.serialize(model()));
+        assertEquals(mixins.deserialize(mixins.serialize(model())).extraFields(), result.extraFields());
+    }
+
+    @Test
+    public void flatInsteadOfDataLayout() throws Exception {
+        JacksonMapper<Model> mixin = JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        JacksonMapper<Model> module = ProjectionTest.withModelModule(mixin);
+        // Default typing as wrapper array: [type id, value].
+        JsonNode data = tree(mixin.serialize(model())).get(1);
+        JsonNode flat = tree(module.serialize(model())).get(1);
+        assertTrue(data.has("data"));
+        assertFalse(data.has("id"));
+        assertFalse(flat.has("data"));
+        assertEquals("1", flat.get("id").asText());
+        assertEquals("c", flat.get("child").get(1).get("id").asText());
+
+        for (JacksonMapper<Model> mapper : Arrays.asList(mixin, module)) {
+            Model result = mapper.deserialize(mapper.serialize(model()));
+            assertEquals(mapper.getName(), "n", result.get("name"));
+            assertEquals(mapper.getName(), "c", ((Model) result.get("child")).get("id"));
+        }
+    }
+
+    @Test
+    public void typeIds() throws Exception {
+        JacksonMapper<Model> typed = ProjectionTest.withModelModule(JacksonMappers.getTypedMapper(JacksonFormat.JSON));
+        Model result = typed.deserialize(typed.serialize(model()));
+        assertSame(Child.class, result.getClass());
+        assertSame(Child.class, result.get("child").getClass());
+        assertSame(HashSet.class, result.get("tags").getClass());
+        assertSame(Long.class, result.get("big").getClass());
+
+        JacksonMapper<Model> compact = ProjectionTest.withModelModule(JacksonMappers.getCompactTypedMapper());
+        Object serialized = compact.serialize(model());
+        JsonNode tree = tree(serialized);
+        assertEquals("hashSet", tree.get(1).get("tags").get(0).asText());
+        assertEquals("long", tree.get(1).get("big").get(0).asText());
+        result = compact.deserialize(serialized);
+        assertTrue(result.get("child") instanceof Model);
+        assertSame(HashSet.class, result.get("tags").getClass());
+        assertSame(Long.class, result.get("big").getClass());
+    }
+
+    @Test
+    public void suppressedNulls() throws Exception {
+        Model model = model();
+        model.set("nothing", null);
+        // The shared mappers do not include nulls.
+        JacksonMapper<Model> nonNull = ProjectionTest.withModelModule(
+                JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON));
+        assertFalse(tree(nonNull.serialize(model)).has("nothing"));
+
+        ObjectMapper always = new ObjectMapper().registerModule(new ModelModule());
+        String json = always.writeValueAsString(model);
+        assertTrue(tree(json).get("nothing").isNull());
+        Map<String, Object> data = always.readValue(json, Model.class).extraFields();
+        assertTrue(data.containsKey("nothing"));
+        assertNull(data.get("nothing"));
+    }
+
+    @Test
+    public void ordering() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new ModelModule());
+        // "id" and "version" first, then the insertion order.
+        assertEquals("{\"id\":\"1\",\"version\":2,\"name\":\"n\",\"tags\":[\"a\"],\"child\":{\"id\":\"c\"},\"big\":5}",
+                mapper.writeValueAsString(model()));
+        // Read in the document order.
+        Model model = mapper.readValue("{\"b\":1,\"a\":2,\"version\":3,\"id\":\"x\"}", Model.class);
+        assertEquals(Arrays.asList("b", "a", "version", "id"), Arrays.asList(model.extraFields().keySet().toArray()));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+
+public class PooledSerializationTest {
+
+    private static Model model(int payload) {
+        char[] chars = new char[payload];
+        Arrays.fill(chars, 'x');
+        Model model = new Model();
+        model.set("id", "1");
+        model.set("payload", new String(chars));
+        return model;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    @Test
+    public void sameBytesAsSerializeAsBytes() {
+        JacksonMapper<Model> mapper = JacksonMappers.getTypedMapper(JacksonFormat.JSON);
+        ByteBufferPool pool = new ByteBufferPool(true, 2);
+        for (int payload : new int[] { 10, 5000, 10 }) {
+            Model model = model(payload);
+            try (PooledOutputStream out = mapper.serializePooled(model, pool)) {
+                assertArrayEquals(mapper.serializeAsBytes(model), bytes(out.getBuffer()));
+            }
+        }
+    }
+
+    @Test
+    public void sizeAfterClose() {
+        ByteBufferPool pool = new ByteBufferPool(false, 2);
+        PooledOutputStream out = new PooledOutputStream(pool, 16);
+        // Also across a switch to a bigger buffer.
+        out.write(new byte[100], 0, 100);
+        out.close();
+        assertEquals(100, out.size());
+        out.close();
+        assertEquals(100, out.size());
+        try {
+            out.getBuffer();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Closed", e.getMessage());
+        }
+        try {
+            out.write(1);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void sizeHintDecaysAndIsCapped() {
+        JacksonMapper<Model> mapper = JacksonMappers.getConfigReaderMapper(JacksonFormat.CBOR);
+        ByteBufferPool pool = new ByteBufferPool(false, 2);
+        mapper.serializePooled(model(ByteBufferPool.MAX_POOLED_CAPACITY + 1000), pool).close();
+        assertEquals(ByteBufferPool.MAX_POOLED_CAPACITY, mapper.getPooledSizeHint());
+        int hint = mapper.getPooledSizeHint();
+        for (int i = 0; i < 300; i++) {
+            mapper.serializePooled(model(10), pool).close();
+            assertTrue(mapper.getPooledSizeHint() <= hint);
+            hint = mapper.getPooledSizeHint();
+        }
+        assertTrue(String.valueOf(hint), hint < 2048);
+    }
+
+    @Test
+    public void oversizeBuffersOnHeapAndNotPooled() {
+        ByteBufferPool pool = new ByteBufferPool(true, 2);
+        ByteBuffer pooled = pool.acquire(100);
+        assertTrue(pooled.isDirect());
+        pool.release(pooled);
+        assertSame(pooled, pool.acquire(1000));
+
+        ByteBuffer oversize = pool.acquire(ByteBufferPool.MAX_POOLED_CAPACITY + 1);
+        assertFalse(oversize.isDirect());
+        assertEquals(ByteBufferPool.MAX_POOLED_CAPACITY + 1, oversize.capacity());
+        pool.release(oversize);
+        assertFalse(oversize == pool.acquire(ByteBufferPool.MAX_POOLED_CAPACITY + 1));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+
+public class ProjectionTest {
+
+    static List<JacksonMapper<Model>> flavours() {
+        List<JacksonMapper<Model>> result = new ArrayList<JacksonMapper<Model>>();
+        for (JacksonMapper<Model> mapper : Arrays.asList((JacksonMapper<Model>) JacksonMappers.getPrettyPrintMapper(),
+                JacksonMappers.getConfigReaderMapper(JacksonFormat.JSON),
+                JacksonMappers.getTypedMapper(JacksonFormat.JSON),
+                JacksonMappers.getCompactTypedMapper(JacksonFormat.JSON))) {
+            result.add(mapper);
+            result.add(withModelModule(mapper));
+        }
+        return result;
+    }
+
+    static JacksonMapper<Model> withModelModule(JacksonMapper<Model> mapper) {
+        final ObjectMapper objectMapper = mapper.getMapper().copy().registerModule(new ModelModule());
+        final String name = mapper.getName() + "+ModelModule";
+        return new JacksonMapper<Model>() {
+            @Override
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    static Model model() {
+        Model child = new Model();
+        child.set("id", "c");
+        child.set("x", 7);
+        Model model = new Model();
+        model.set("id", "1");
+        model.set("name", "n");
+        model.set("child", child);
+        return model;
+    }
+
+    @Test
+    public void sameLayoutAsFullSerialization() throws Exception {
+        // As trees since the bean serializers of some flavours write "id" twice(getter and any getter).
+        ObjectMapper json = new ObjectMapper();
+        for (JacksonMapper<Model> mapper : flavours()) {
+            Object full = mapper.serialize(model());
+            Object projected = mapper.serialize(model(), Projection.of("id", "name", "child.id", "child.x"));
+            assertEquals(mapper.getName(), json.readTree(full.toString()), json.readTree(projected.toString()));
+        }
+    }
+
+    @Test
+    public void onlyProjectedAttributes() {
+        for (JacksonMapper<Model> mapper : flavours()) {
+            Model projected = mapper.deserialize(mapper.serialize(model(), Projection.of("id", "child.x")));
+            assertEquals(mapper.getName(), "1", projected.get("id"));
+            assertEquals(mapper.getName(), null, projected.get("name"));
+            Object child = projected.get("child");
+            Object x = child instanceof Model ? ((Model) child).get("x") : ((Map<?, ?>) child).get("x");
+            assertEquals(mapper.getName(), 7, x);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tugmodel.client.model.Model;
+
+public class RegisterMetaTest {
+
+    public static class Nested extends Model {
+    }
+
+    static JacksonMapper<Model> mapper() {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        return new JacksonMapper<Model>() {
+            @Override
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+        };
+    }
+
+    @Test
+    public void registerAppliesToTypeAlreadySerializedAsNestedValue() {
+        JacksonMapper<Model> mapper = mapper();
+        Nested nested = new Nested();
+        nested.set("id", "c");
+        nested.set("secret", "s");
+        // Only Jackson caches the serializer of Nested, the mapper registry only has the Map writer.
+        assertFalse(String.valueOf(mapper.serialize(Collections.singletonMap("m", nested))).contains("secret"));
+
+        ObjectMapper live = mapper.getMapper();
+        mapper.registerMeta(new MixinsGenerator("RegisterTest"), MixinsGeneratorTest.meta("Nested", Nested.class));
+
+        assertTrue(String.valueOf(mapper.serialize(Collections.singletonMap("m", nested))).contains("secret"));
+        // The live mapper is never changed, a copy replaces it.
+        assertNull(live.findMixInClassFor(Nested.class));
+        assertNotNull(mapper.getMapper().findMixInClassFor(Nested.class));
+    }
+
+    @Test
+    public void evictRemovesMixin() {
+        JacksonMapper<Model> mapper = mapper();
+        MixinsGenerator generator = new MixinsGenerator("EvictTest");
+        mapper.registerMeta(generator, MixinsGeneratorTest.meta("Nested", Nested.class));
+        ObjectMapper live = mapper.getMapper();
+        mapper.evictMeta(generator, MixinsGeneratorTest.meta("Nested", Nested.class));
+        assertEquals(generator.getMixinClassName(MixinsGeneratorTest.meta("Nested", Nested.class)),
+                live.findMixInClassFor(Nested.class).getName());
+        assertNull(mapper.getMapper().findMixInClassFor(Nested.class));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.tugmodel.client.model.Model;
+
+public class SerializedFormCacheTest {
+
+    static JacksonMapper<Model> flatMapper() {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ModelModule());
+        return new JacksonMapper<Model>() {
+            @Override
+            public ObjectMapper initMapper() {
+                return objectMapper;
+            }
+        };
+    }
+
+    static JacksonMapper<Model> typedMapper() {
+        return ProjectionTest.withModelModule(JacksonMappers.getTypedMapper(JacksonFormat.JSON));
+    }
+
+    static Model model(String id, int version) {
+        Model model = new Model();
+        model.set(Model.KEY_ID, id);
+        model.set(Model.KEY_VERSION, version);
+        model.set("name", "name of " + id);
+        return model;
+    }
+
+    static Model parent() {
+        Model parent = model("parent", 1);
+        parent.set("child", model("child", 1));
+        List<Object> children = new ArrayList<Object>();
+        children.add(model("first", 1));
+        children.add(model("second", 1));
+        parent.set("children", children);
+        return parent;
+    }
+
+    @Test
+    public void splicedSameAsUncached() {
+        for (List<JacksonMapper<Model>> mappers : Arrays.asList(Arrays.asList(flatMapper(), flatMapper()),
+                Arrays.asList(typedMapper(), typedMapper()))) {
+            JacksonMapper<Model> cached = mappers.get(0);
+            JacksonMapper<Model> uncached = mappers.get(1);
+            SerializedFormCache cache = new SerializedFormCache(1 << 20);
+            cached.setSerializedFormCache(cache);
+            Object expected = uncached.serialize(parent());
+            // Cold then served from the cached fragments.
+            assertEquals(expected, cached.serialize(parent()));
+            assertEquals(expected, cached.serialize(parent()));
+            assertEquals(3, cache.getCount());
+            assertEquals(3, cache.getHits());
+            assertEquals(new String(uncached.serializeAsBytes(parent())),
+                    new String(cached.serializeAsBytes(parent())));
+        }
+    }
+
+    @Test
+    public void changedChildNotServedStaleInParent() {
+        JacksonMapper<Model> mapper = flatMapper();
+        mapper.setSerializedFormCache(new SerializedFormCache(1 << 20));
+        Model parent = parent();
+        mapper.serialize(parent);
+        Model child = (Model) parent.get("child");
+        child.set(Model.KEY_VERSION, 2);
+        child.set("name", "renamed");
+        assertEquals(flatMapper().serialize(parent), mapper.serialize(parent));
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        JacksonMapper<Model> mapper = flatMapper();
+        SerializedFormCache cache = new SerializedFormCache(1 << 20);
+        mapper.setSerializedFormCache(cache);
+        Object first = mapper.serialize(model("a", 1));
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(first, mapper.serialize(model("a", 1)));
+        assertEquals(1, cache.getHits());
+        // Another version is another entry.
+        assertNotEquals(first, mapper.serialize(model("a", 2)));
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getCount());
+        assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+        cache.resetStats();
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void modelWithoutIdOrVersionNotCached() {
+        JacksonMapper<Model> mapper = flatMapper();
+        SerializedFormCache cache = new SerializedFormCache(1 << 20);
+        mapper.setSerializedFormCache(cache);
+        Model noVersion = model("a", 1);
+        noVersion.set(Model.KEY_VERSION, null);
+        Model noId = model("b", 1);
+        noId.set(Model.KEY_ID, null);
+        mapper.serialize(noVersion);
+        mapper.serialize(noId);
+        mapper.serialize(noId);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void evictionUnderMaxBytes() {
+        JacksonMapper<Model> mapper = flatMapper();
+        long maxBytes = 16 * 1024;
+        SerializedFormCache cache = new SerializedFormCache(maxBytes);
+        mapper.setSerializedFormCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            mapper.serialize(model("m" + i, 1));
+            assertTrue(cache.toString(), cache.getSizeBytes() <= maxBytes);
+        }
+        assertTrue(cache.toString(), cache.getEvictions() > 0);
+        assertEquals(1000, cache.getCount() + cache.getEvictions());
+        // The most recent ones are kept.
+        long misses = cache.getMisses();
+        mapper.serialize(model("m999", 1));
+        assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    public void mappersSharingCacheKeepTheirForms() {
+        SerializedFormCache cache = new SerializedFormCache(1 << 20);
+        JacksonMapper<Model> compact = flatMapper();
+        JacksonMapper<Model> indented = flatMapper();
+        indented.getMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        compact.setSerializedFormCache(cache);
+        indented.setSerializedFormCache(cache);
+        // Same default name, different configuration.
+        assertEquals(compact.getName(), indented.getName());
+        Object compactForm = compact.serialize(model("a", 1));
+        assertNotEquals(compactForm, indented.serialize(model("a", 1)));
+        assertEquals(compactForm, compact.serialize(model("a", 1)));
+        assertEquals(2, cache.getCount());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017- Cristian Donoiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tugmodel.mapper.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tugmodel.client.model.Model;
+import com.tugmodel.mapper.jackson.JacksonMapper.MergeMode;
+
+/**
+ * The {@link MergeMode}s of updateModel in all the flavours.
+ */
+public class UpdateModelTest {
+
+    private static Model dest() {
+        Model dest = MergePatchTest.withChild(MergePatchTest.child(new Model()));
+        dest.set("map", MergePatchTest.map("k", 1));
+        dest.set("kept", "d");
+        return dest;
+    }
+
+    private static Model src() {
+        Model child = new Model();
+        child.set("p", 3);
+        Model src = new Model();
+        src.set("id", "m");
+        src.set("name", "b");
+        src.set("x", child);
+        src.set("map", MergePatchTest.map("l", 2));
+        return src;
+    }
+
+    private static int intValue(Object attributes, String name) {
+        return ((Number) ModelSnapshot.attributes(attributes).get(name)).intValue();
+    }
+
+    @Test
+    public void shallowReplacesNestedValues() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            String msg = mapper.getName();
+            for (Object src : new Object[] { src(), mapper.serialize(src()) }) {
+                Model dest = dest();
+                mapper.updateModel(src, dest, MergeMode.SHALLOW);
+                assertEquals(msg, "b", dest.get("name"));
+                assertEquals(msg, "d", dest.get("kept"));
+                Map<String, Object> x = ModelSnapshot.attributes(dest.get("x"));
+                assertEquals(msg, 3, intValue(x, "p"));
+                assertFalse(msg, x.containsKey("q"));
+                Map<?, ?> map = dest.get("map");
+                assertFalse(msg, map.containsKey("k"));
+                assertEquals(msg, 2, ((Number) map.get("l")).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void deepMergesNestedModels() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            String msg = mapper.getName();
+            Model src = src();
+            Model dest = dest();
+            Model child = dest.get("x");
+            mapper.updateModel(src, dest, MergeMode.DEEP);
+            assertEquals(msg, "b", dest.get("name"));
+            assertEquals(msg, "d", dest.get("kept"));
+            // Merged in place.
+            assertSame(msg, child, dest.get("x"));
+            assertEquals(msg, 3, intValue(child, "p"));
+            assertEquals(msg, 2, intValue(child, "q"));
+            // Maps are values, replaced as a whole and copied.
+            Map<?, ?> map = dest.get("map");
+            assertFalse(msg, map.containsKey("k"));
+            assertNotSame(msg, src.get("map"), map);
+        }
+    }
+
+    @Test
+    public void deepCopiesNewChildren() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            Model dest = dest();
+            dest.set("x", null);
+            Model src = src();
+            mapper.updateModel(src, dest, MergeMode.DEEP);
+            assertNotSame(mapper.getName(), src.get("x"), dest.get("x"));
+            ((Model) src.get("x")).set("p", 4);
+            assertEquals(mapper.getName(), 3, intValue(dest.get("x"), "p"));
+        }
+    }
+
+    @Test
+    public void nulls() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            String msg = mapper.getName();
+            Model src = src();
+            src.set("kept", null);
+            // Same as parsing the source: the any getter of the mixins writes the nulls, ModelModule does not.
+            boolean written = mapper.serialize(src).toString().contains("\"kept\"");
+            assertEquals(msg, !msg.endsWith("+ModelModule"), written);
+            Model dest = dest();
+            mapper.updateModel(src, dest, MergeMode.SHALLOW);
+            assertEquals(msg, written ? null : "d", dest.get("kept"));
+            // Copied as is.
+            dest = dest();
+            mapper.updateModel(src, dest, MergeMode.DEEP);
+            assertTrue(msg, dest.extraFields().containsKey("kept"));
+            assertNull(msg, dest.get("kept"));
+            // Nothing to apply.
+            dest = dest();
+            mapper.updateModel(null, dest, MergeMode.SHALLOW);
+            mapper.updateModel(null, dest, MergeMode.DEEP);
+            mapper.updateModel(null, dest, MergeMode.PATCH);
+            assertEquals(msg, dest().extraFields().keySet(), dest.extraFields().keySet());
+        }
+    }
+
+    @Test
+    public void patchRemovesNullAttributes() {
+        for (JacksonMapper<Model> mapper : ProjectionTest.flavours()) {
+            String msg = mapper.getName();
+            Model dest = dest();
+            Model child = dest.get("x");
+            mapper.updateModel("{\"kept\":null,\"x\":{\"q\":null,\"r\":5},\"map\":{\"k\":null},\"missing\":null}", dest,
+                    MergeMode.PATCH);
+            assertFalse(msg, dest.extraFields().containsKey("kept"));
+            assertFalse(msg, dest.extraFields().containsKey("missing"));
+            assertEquals(msg, "a", dest.get("name"));
+            // Patched in place.
+            assertSame(msg, child, dest.get("x"));
+            assertEquals(msg, 1, intValue(child, "p"));
+            assertFalse(msg, ModelSnapshot.attributes(child).containsKey("q"));
+            assertEquals(msg, 5, intValue(child, "r"));
+            assertTrue(msg, ((Map<?, ?>) dest.get("map")).isEmpty());
+        }
+    }
+}